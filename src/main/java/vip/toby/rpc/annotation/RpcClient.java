@@ -1,6 +1,8 @@
 package vip.toby.rpc.annotation;
 
 import org.springframework.stereotype.Component;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.entity.RpcConfirmMode;
 import vip.toby.rpc.entity.RpcType;
 
 import java.lang.annotation.*;
@@ -24,4 +26,59 @@ public @interface RpcClient {
 
     RpcType type() default RpcType.SYNC;
 
+    /**
+     * ASYNC 批量发送的最大条数, 大于 1 时开启批量发送
+     */
+    int batchSize() default 1;
+
+    /**
+     * ASYNC 批量发送的最长等待时间(毫秒)
+     */
+    int batchTimeout() default 10;
+
+    /**
+     * ASYNC/DELAY 未确认消息的最大数量, 大于 0 时开启发布确认窗口
+     */
+    int confirmWindow() default 0;
+
+    /**
+     * 发布确认窗口已满时的处理方式
+     */
+    RpcConfirmMode confirmMode() default RpcConfirmMode.BLOCK;
+
+    /**
+     * 消息编解码, 内置 jsonb / json / jsonb-array
+     */
+    String codec() default RpcCodec.JSONB;
+
+    /**
+     * SYNC 熔断的失败率阈值, 0 ~ 1, 大于 0 时开启熔断, 超时、过载和失败都计为失败
+     */
+    double circuitBreakerFailureRate() default 0;
+
+    /**
+     * 熔断的统计窗口(毫秒)
+     */
+    int circuitBreakerWindow() default 10000;
+
+    /**
+     * 统计窗口内的最少调用次数, 少于该值时不熔断
+     */
+    int circuitBreakerMinCalls() default 20;
+
+    /**
+     * 熔断后进入半开状态前的等待时间(毫秒)
+     */
+    int circuitBreakerOpenTime() default 5000;
+
+    /**
+     * 半开状态允许的试探调用次数, 全部成功后恢复, 任意一次失败重新熔断
+     */
+    int circuitBreakerHalfOpenCalls() default 5;
+
+    /**
+     * 按方法分别熔断, 默认整个 RpcClient 共用
+     */
+    boolean circuitBreakerPerMethod() default false;
+
 }
@@ -16,4 +16,34 @@ public @interface RpcClientMethod {
 
     String partitionKey() default "";
 
+    /**
+     * SYNC 响应缓存时间(毫秒), 大于 0 时开启, 只缓存成功的结果
+     */
+    long cacheTtl() default 0;
+
+    /**
+     * 响应缓存的最大数量
+     */
+    int cacheMaxSize() default 1000;
+
+    /**
+     * 组成缓存 key 的参数名(唯一 @RpcDTO 参数时为字段名), 为空时使用全部参数
+     */
+    String[] cacheKey() default {};
+
+    /**
+     * SYNC 合并相同的并发请求, 参数完全相同的调用共用一次请求和结果
+     */
+    boolean coalesce() default false;
+
+    /**
+     * SYNC 对冲请求的最大次数, 大于 0 时开启, 只用于幂等方法
+     */
+    int maxHedges() default 0;
+
+    /**
+     * 对冲延迟(毫秒), 超过该时间没有回复时再发送一次, 0 时使用最近回复耗时的 p95
+     */
+    long hedgeDelay() default 0;
+
 }
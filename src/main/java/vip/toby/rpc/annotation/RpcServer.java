@@ -1,6 +1,8 @@
 package vip.toby.rpc.annotation;
 
 import org.springframework.stereotype.Component;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.entity.RpcContainerType;
 import vip.toby.rpc.entity.RpcType;
 
 import java.lang.annotation.*;
@@ -23,8 +25,78 @@ public @interface RpcServer {
 
     int threadNum() default 10;
 
+    /**
+     * 虚拟线程最大并发数, 大于 0 时开启虚拟线程模式, 分区队列除外
+     */
+    int virtualThreadNum() default 0;
+
+    /**
+     * 消费容器类型, DIRECT 适合低延迟的 SYNC 服务
+     */
+    RpcContainerType containerType() default RpcContainerType.SIMPLE;
+
+    /**
+     * 每个消费者未 Ack 的最大消息数, 0 时使用默认值 250
+     */
+    int prefetch() default 0;
+
+    /**
+     * 开启 consumerBatchEnabled 时每批的最大消息数
+     */
+    int batchSize() default 1;
+
+    /**
+     * 按批消费, 一批消息处理完成后统一 Ack
+     */
+    boolean consumerBatchEnabled() default false;
+
+    /**
+     * 等待消息的最长时间(毫秒), 按批消费时未凑满 batchSize 也会在超时后处理, 0 时使用默认值 1000
+     */
+    long receiveTimeout() default 0;
+
+    /**
+     * 最大消费者数量, 大于 threadNum 时按负载自动扩容, 0 时不扩容
+     */
+    int maxConcurrentConsumers() default 0;
+
+    /**
+     * ASYNC 合并 Ack 的消息数, 大于 1 时开启, 使用 multiple=true 一次 Ack 连续完成的消息
+     */
+    int ackBatchSize() default 1;
+
+    /**
+     * ASYNC 合并 Ack 的最长等待时间(毫秒)
+     */
+    int ackBatchTimeout() default 10;
+
+    /**
+     * 按队列积压、处理耗时和消费者利用率在 threadNum ~ maxConcurrentConsumers 之间自动伸缩, 替代 SimpleMessageListenerContainer 自带的扩容
+     */
+    boolean autoscale() default false;
+
+    /**
+     * 自动伸缩的采样间隔(毫秒)
+     */
+    int autoscaleInterval() default 5000;
+
+    /**
+     * SYNC 排队时间目标(毫秒), 大于 0 时开启自适应过载保护, 排队时间持续 admissionInterval 都高于该值时直接回复 OVERLOADED
+     */
+    int admissionTarget() default 0;
+
+    /**
+     * SYNC 过载判定窗口(毫秒)
+     */
+    int admissionInterval() default 100;
+
     int partitionNum() default 1;
 
     RpcType[] type() default RpcType.SYNC;
 
+    /**
+     * 消息编解码, 内置 jsonb / json / jsonb-array
+     */
+    String codec() default RpcCodec.JSONB;
+
 }
@@ -0,0 +1,203 @@
+package vip.toby.rpc.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import vip.toby.rpc.entity.RpcCircuitState;
+import vip.toby.rpc.entity.RpcStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * RpcCircuitBreaker, 基于滑动窗口失败率的熔断器
+ * <p>
+ * 窗口分为 BUCKET_NUM 个桶, 每个桶的调用次数和失败次数合并在一个 long 中, 无锁更新; 桶切换时允许丢失少量计数
+ *
+ * @author toby
+ */
+@Slf4j
+final class RpcCircuitBreaker {
+
+    private final static int BUCKET_NUM = 10;
+
+    private final String rpcName;
+    // 按方法熔断时为方法名, 否则为 null
+    private final String command;
+    private final double failureRate;
+    private final int minCalls;
+    private final long openTime;
+    private final int halfOpenCalls;
+    private final long probeTimeout;
+    private final long bucketTime;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    // 每个桶对应的时间序号
+    private final AtomicLongArray epochs = new AtomicLongArray(BUCKET_NUM);
+    // 高 32 位为调用次数, 低 32 位为失败次数
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_NUM);
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(RpcCircuitState.CLOSED, 0));
+    // 未开启指标时为 null
+    private final Counter rejectedCounter;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param probeTimeout 半开状态持续该时间(毫秒)后仍有试探调用未返回时重新熔断
+     */
+    RpcCircuitBreaker(
+            String rpcName,
+            String command,
+            double failureRate,
+            int window,
+            int minCalls,
+            int openTime,
+            int halfOpenCalls,
+            long probeTimeout,
+            ApplicationEventPublisher applicationEventPublisher,
+            MeterRegistry meterRegistry
+    ) {
+        this.rpcName = rpcName;
+        this.command = command;
+        this.failureRate = failureRate;
+        this.minCalls = minCalls;
+        this.openTime = openTime;
+        this.halfOpenCalls = halfOpenCalls;
+        this.probeTimeout = probeTimeout;
+        this.bucketTime = Math.max(1, window / BUCKET_NUM);
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            this.epochs.set(i, -1);
+        }
+        final String tagCommand = command == null ? "*" : command;
+        if (meterRegistry != null) {
+            Gauge.builder("simple.rpc.client.circuit.state", this.phase, p -> p.get().state.ordinal()).tag("rpcName", rpcName).tag("command", tagCommand).register(meterRegistry);
+        }
+        this.rejectedCounter = meterRegistry != null ? Counter.builder("simple.rpc.client.circuit.rejected").tag("rpcName", rpcName).tag("command", tagCommand).register(meterRegistry) : null;
+    }
+
+    /**
+     * 申请调用许可, 不允许时返回 null, 直接返回 CIRCUIT_OPEN; 许可为申请时的状态, 必须通过 onResult 返回调用结果
+     */
+    Phase tryAcquire() {
+        while (true) {
+            final Phase phase = this.phase.get();
+            final long now = System.currentTimeMillis();
+            switch (phase.state) {
+                case CLOSED -> {
+                    return phase;
+                }
+                case OPEN -> {
+                    if (now - phase.since < this.openTime) {
+                        if (this.rejectedCounter != null) {
+                            this.rejectedCounter.increment();
+                        }
+                        return null;
+                    }
+                    transition(phase, RpcCircuitState.HALF_OPEN);
+                }
+                case HALF_OPEN -> {
+                    if (phase.permits.getAndDecrement() > 0) {
+                        return phase;
+                    }
+                    if (now - phase.since > this.probeTimeout) {
+                        // 试探调用一直没有全部返回, 重新熔断, 避免停在半开状态
+                        transition(phase, RpcCircuitState.OPEN);
+                    }
+                    this.rejectedCounter.increment();
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录调用结果, 申请许可后的状态已经变化时忽略
+     */
+    void onResult(Phase permit, RpcStatus rpcStatus) {
+        if (permit == null || this.phase.get() != permit) {
+            return;
+        }
+        final boolean failure = rpcStatus != RpcStatus.OK && rpcStatus != RpcStatus.NOT_FOUND;
+        if (permit.state == RpcCircuitState.HALF_OPEN) {
+            if (failure) {
+                transition(permit, RpcCircuitState.OPEN);
+            } else if (permit.successes.incrementAndGet() >= this.halfOpenCalls) {
+                transition(permit, RpcCircuitState.CLOSED);
+            }
+            return;
+        }
+        if (permit.state == RpcCircuitState.CLOSED && record(failure)) {
+            transition(permit, RpcCircuitState.OPEN);
+        }
+    }
+
+    /**
+     * 记录到当前桶, 返回是否达到熔断条件
+     */
+    private boolean record(boolean failure) {
+        final long epoch = System.currentTimeMillis() / this.bucketTime;
+        final int index = (int) (epoch % BUCKET_NUM);
+        final long bucketEpoch = this.epochs.get(index);
+        if (bucketEpoch != epoch && this.epochs.compareAndSet(index, bucketEpoch, epoch)) {
+            this.counts.set(index, 0);
+        }
+        this.counts.addAndGet(index, failure ? (1L << 32) | 1L : 1L << 32);
+        if (!failure) {
+            return false;
+        }
+        long calls = 0;
+        long failures = 0;
+        for (int i = 0; i < BUCKET_NUM; i++) {
+            if (epoch - this.epochs.get(i) < BUCKET_NUM) {
+                final long count = this.counts.get(i);
+                calls += count >>> 32;
+                failures += count & 0xFFFFFFFFL;
+            }
+        }
+        return calls >= this.minCalls && failures >= calls * this.failureRate;
+    }
+
+    private void transition(Phase from, RpcCircuitState toState) {
+        if (!this.phase.compareAndSet(from, new Phase(toState, toState == RpcCircuitState.HALF_OPEN ? this.halfOpenCalls : 0))) {
+            return;
+        }
+        if (toState == RpcCircuitState.CLOSED) {
+            for (int i = 0; i < BUCKET_NUM; i++) {
+                this.epochs.set(i, -1);
+                this.counts.set(i, 0);
+            }
+        }
+        if (this.meterRegistry != null) {
+            Counter.builder("simple.rpc.client.circuit.transition")
+                    .tag("rpcName", this.rpcName)
+                    .tag("command", this.command == null ? "*" : this.command)
+                    .tag("state", toState.name())
+                    .register(this.meterRegistry)
+                    .increment();
+        }
+        log.warn("Circuit {} -> {}! RpcClient: {}, Method: {}", from.state, toState, this.rpcName, this.command);
+        this.applicationEventPublisher.publishEvent(new RpcCircuitBreakerEvent(this, this.rpcName, this.command, from.state, toState));
+    }
+
+    /**
+     * 熔断状态, 每次状态变化都创建新的实例, 同时作为调用许可, 之前状态中发出的调用结果不会计入之后的状态
+     */
+    static final class Phase {
+
+        private final RpcCircuitState state;
+        private final long since = System.currentTimeMillis();
+        // 半开状态剩余的试探次数和已成功的次数
+        private final AtomicInteger permits;
+        private final AtomicInteger successes = new AtomicInteger();
+
+        private Phase(RpcCircuitState state, int permits) {
+            this.state = state;
+            this.permits = new AtomicInteger(permits);
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package vip.toby.rpc.client;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+import vip.toby.rpc.entity.RpcCircuitState;
+
+import java.io.Serial;
+
+/**
+ * RpcCircuitBreakerEvent, 熔断状态变化时发布
+ *
+ * @author toby
+ */
+@Getter
+public class RpcCircuitBreakerEvent extends ApplicationEvent {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String rpcName;
+    // 按方法熔断时为方法名, 否则为 null
+    private final String command;
+    private final RpcCircuitState fromState;
+    private final RpcCircuitState toState;
+
+    RpcCircuitBreakerEvent(Object source, String rpcName, String command, RpcCircuitState fromState, RpcCircuitState toState) {
+        super(source);
+        this.rpcName = rpcName;
+        this.command = command;
+        this.fromState = fromState;
+        this.toState = toState;
+    }
+
+}
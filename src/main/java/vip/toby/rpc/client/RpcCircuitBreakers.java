@@ -0,0 +1,69 @@
+package vip.toby.rpc.client;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ApplicationEventPublisher;
+import vip.toby.rpc.annotation.RpcClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RpcCircuitBreakers, RpcClient 共用一个熔断器或者按方法分别熔断
+ *
+ * @author toby
+ */
+final class RpcCircuitBreakers {
+
+    private final String rpcName;
+    private final RpcClient rpcClient;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final long probeTimeout;
+    // 共用时不为 null
+    private final RpcCircuitBreaker shared;
+    private final Map<String, RpcCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param replyTimeout 半开状态的试探调用超过该时间仍未全部返回时重新熔断
+     */
+    RpcCircuitBreakers(String rpcName, RpcClient rpcClient, long replyTimeout, ApplicationEventPublisher applicationEventPublisher, MeterRegistry meterRegistry) {
+        if (rpcClient.circuitBreakerFailureRate() <= 0 || rpcClient.circuitBreakerFailureRate() > 1) {
+            throw new RuntimeException("circuitBreakerFailureRate 必须大于 0 并且不大于 1, RpcClient: " + rpcName);
+        }
+        if (rpcClient.circuitBreakerMinCalls() < 1) {
+            throw new RuntimeException("circuitBreakerMinCalls 必须大于 0, RpcClient: " + rpcName);
+        }
+        if (rpcClient.circuitBreakerWindow() <= 0 || rpcClient.circuitBreakerOpenTime() <= 0 || rpcClient.circuitBreakerHalfOpenCalls() <= 0) {
+            throw new RuntimeException("circuitBreakerWindow、circuitBreakerOpenTime 和 circuitBreakerHalfOpenCalls 必须大于 0, RpcClient: " + rpcName);
+        }
+        this.rpcName = rpcName;
+        this.rpcClient = rpcClient;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.probeTimeout = replyTimeout;
+        this.shared = rpcClient.circuitBreakerPerMethod() ? null : create(null);
+    }
+
+    RpcCircuitBreaker get(String command) {
+        if (this.shared != null) {
+            return this.shared;
+        }
+        return this.circuitBreakers.computeIfAbsent(command, this::create);
+    }
+
+    private RpcCircuitBreaker create(String command) {
+        return new RpcCircuitBreaker(
+                this.rpcName,
+                command,
+                this.rpcClient.circuitBreakerFailureRate(),
+                this.rpcClient.circuitBreakerWindow(),
+                this.rpcClient.circuitBreakerMinCalls(),
+                this.rpcClient.circuitBreakerOpenTime(),
+                this.rpcClient.circuitBreakerHalfOpenCalls(),
+                this.probeTimeout,
+                this.applicationEventPublisher,
+                this.meterRegistry
+        );
+    }
+
+}
@@ -0,0 +1,382 @@
+package vip.toby.rpc.client;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONFactory;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.writer.FieldWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ClassUtils;
+import vip.toby.rpc.annotation.RpcClientMethod;
+import vip.toby.rpc.annotation.RpcDTO;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.entity.RpcDelayDTO;
+import vip.toby.rpc.entity.RpcResult;
+import vip.toby.rpc.entity.RpcType;
+import vip.toby.rpc.util.RpcUtil;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RpcClientMethodDescriptor, 启动时为每个接口方法预先解析好调用信息
+ *
+ * @author toby
+ */
+final class RpcClientMethodDescriptor {
+
+    /**
+     * 参数编码方式
+     */
+    private enum ParameterKind {
+        JSON_OBJECT, // JSONObject
+        RPC_DTO, // 添加 @RpcDTO 的 JavaBean
+        NAMED // 按参数名放入
+    }
+
+    /**
+     * 缓存的回复, 保存解压后的消息体, 每次命中时重新解析, 调用方之间不共享结果对象
+     */
+    record CachedReply(RpcCodec rpcCodec, byte[] body) {
+    }
+
+    private final String rpcClientName;
+    private final String methodName;
+    private final String command;
+    private final boolean future;
+    // RpcResult<T> 中声明的 T, 未声明时为 Object
+    private final Type resultType;
+    private final ParameterKind[] parameterKinds;
+    private final String[] parameterNames;
+    // 唯一参数且添加了 @RpcDTO 时, 直接编码 JavaBean
+    private final boolean typed;
+    private final String rpcName;
+    private final int partitionNum;
+    private final String partitionKey;
+    private final FieldWriter<Object> partitionFieldWriter;
+    // 为 null 时不缓存
+    private final Cache<String, CachedReply> cache;
+    private final String[] cacheKeys;
+    // 唯一 @RpcDTO 参数时, 直接从 JavaBean 中读取缓存字段
+    private final FieldWriter<Object>[] cacheFieldWriters;
+    // 进行中的请求, key 为编码后的请求体, 为 null 时不合并
+    private final Map<ByteBuffer, CompletableFuture<RpcResult<Object>>> inFlight;
+    // 为 null 时不对冲
+    private final RpcHedgePolicy hedgePolicy;
+
+    private RpcClientMethodDescriptor(
+            String rpcClientName,
+            String methodName,
+            String command,
+            boolean future,
+            Type resultType,
+            ParameterKind[] parameterKinds,
+            String[] parameterNames,
+            String rpcName,
+            int partitionNum,
+            String partitionKey,
+            FieldWriter<Object> partitionFieldWriter,
+            Cache<String, CachedReply> cache,
+            String[] cacheKeys,
+            FieldWriter<Object>[] cacheFieldWriters,
+            boolean coalesce,
+            RpcHedgePolicy hedgePolicy
+    ) {
+        this.rpcClientName = rpcClientName;
+        this.methodName = methodName;
+        this.command = command;
+        this.future = future;
+        this.resultType = resultType;
+        this.parameterKinds = parameterKinds;
+        this.parameterNames = parameterNames;
+        this.typed = parameterKinds.length == 1 && parameterKinds[0] == ParameterKind.RPC_DTO;
+        this.rpcName = rpcName;
+        this.partitionNum = partitionNum;
+        this.partitionKey = partitionKey;
+        this.partitionFieldWriter = partitionFieldWriter;
+        this.cache = cache;
+        this.cacheKeys = cacheKeys;
+        this.cacheFieldWriters = cacheFieldWriters;
+        this.inFlight = coalesce ? new ConcurrentHashMap<>() : null;
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * 解析接口的所有方法, 配置错误时直接抛出异常
+     */
+    static Map<Method, RpcClientMethodDescriptor> build(Class<?> rpcClientInterface, String rpcName, RpcType rpcType, int partitionNum) {
+        final Map<Method, RpcClientMethodDescriptor> descriptors = new HashMap<>();
+        for (Method method : rpcClientInterface.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            descriptors.put(method, of(rpcClientInterface, method, rpcName, rpcType, partitionNum));
+        }
+        return Map.copyOf(descriptors);
+    }
+
+    private static RpcClientMethodDescriptor of(Class<?> rpcClientInterface, Method method, String rpcName, RpcType rpcType, int partitionNum) {
+        final String rpcClientName = rpcClientInterface.getName();
+        // 获取方法注解
+        final RpcClientMethod rpcClientMethod = method.getAnnotation(RpcClientMethod.class);
+        if (rpcClientMethod == null) {
+            throw new RuntimeException("未加 @RpcClientMethod, Class: " + rpcClientName + ", Method: " + method.getName());
+        }
+        final boolean future = rpcType == RpcType.SYNC ? RpcClientProxy.isFutureReturnType(method) : RpcClientProxy.isConfirmReturnType(method);
+        if (rpcType == RpcType.ASYNC && method.getGenericReturnType() != Void.TYPE && !future) {
+            throw new RuntimeException("ASYNC RpcClient 返回类型只能为 void 或者 CompletableFuture<Void>, Class: " + rpcClientName + ", Method: " + method.getName());
+        }
+        if (rpcType == RpcType.DELAY && method.getGenericReturnType() != Void.TYPE && !future) {
+            throw new RuntimeException("DELAY RpcClient 返回类型只能为 void 或者 CompletableFuture<Void>, Class: " + rpcClientName + ", Method: " + method.getName());
+        }
+        if (rpcType == RpcType.SYNC && method.getReturnType() != RpcResult.class && !future) {
+            throw new RuntimeException("SYNC RpcClient 返回类型只能为 RpcResult 或者 CompletableFuture<RpcResult>, Class: " + rpcClientName + ", Method: " + method.getName());
+        }
+        final Type resultType = getResultType(future ? ((ParameterizedType) method.getGenericReturnType()).getActualTypeArguments()[0] : method.getGenericReturnType());
+        String command = rpcClientMethod.value();
+        if (StringUtils.isBlank(command)) {
+            command = method.getName();
+        }
+        final String partitionKey = StringUtils.isBlank(rpcClientMethod.partitionKey()) ? null : rpcClientMethod.partitionKey();
+        if (rpcType == RpcType.SYNC) {
+            if (RpcUtil.partitionEnabled(partitionNum)) {
+                throw new RuntimeException("SYNC RpcClient 不支持分区配置, RpcClient: " + rpcClientName + ", Method: " + method.getName());
+            }
+            if (partitionKey != null) {
+                throw new RuntimeException("SYNC RpcClientMethod 不支持 partitionKey, RpcClient: " + rpcClientName + ", Method: " + method.getName());
+            }
+        }
+        if (partitionKey != null && !RpcUtil.partitionEnabled(partitionNum)) {
+            throw new RuntimeException("未开启分区配置, RpcClient: " + rpcClientName + ", Method: " + method.getName());
+        }
+        final Parameter[] parameters = method.getParameters();
+        if (rpcType == RpcType.DELAY) {
+            if (parameters.length != 1) {
+                throw new RuntimeException("DELAY RpcClient 只能包含唯一参数, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+            final Type type = parameters[0].getParameterizedType();
+            if (!(type instanceof Class<?> clazz) || !RpcDelayDTO.class.isAssignableFrom(clazz)) {
+                throw new RuntimeException("DELAY RpcClient 参数必须继承 RpcDelayDTO, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+        }
+        final ParameterKind[] parameterKinds = new ParameterKind[parameters.length];
+        final String[] parameterNames = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            final Parameter parameter = parameters[i];
+            if (parameter.getType() == JSONObject.class) {
+                parameterKinds[i] = ParameterKind.JSON_OBJECT;
+            } else if (parameter.getType().getAnnotation(RpcDTO.class) != null) {
+                parameterKinds[i] = ParameterKind.RPC_DTO;
+            } else {
+                // Spring-Boot 框架默认已加上 -parameters 编译参数
+                parameterKinds[i] = ParameterKind.NAMED;
+            }
+            parameterNames[i] = parameter.getName();
+        }
+        FieldWriter<Object> partitionFieldWriter = null;
+        if (partitionKey != null && parameterKinds.length == 1 && parameterKinds[0] == ParameterKind.RPC_DTO) {
+            // 从 JavaBean 中直接读取分区字段
+            partitionFieldWriter = getFieldWriter(parameters[0].getType(), partitionKey);
+            if (partitionFieldWriter == null) {
+                throw new RuntimeException("未找到分区字段, PartitionKey: " + partitionKey + ", RpcClient: " + rpcClientName + ", Method: " + method.getName());
+            }
+        }
+        // 响应缓存
+        Cache<String, CachedReply> cache = null;
+        final String[] cacheKeys = rpcClientMethod.cacheKey();
+        FieldWriter<Object>[] cacheFieldWriters = null;
+        if (rpcClientMethod.cacheTtl() > 0) {
+            if (rpcType != RpcType.SYNC) {
+                throw new RuntimeException("只有 SYNC RpcClient 支持响应缓存, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+            if (rpcClientMethod.cacheMaxSize() <= 0) {
+                throw new RuntimeException("cacheMaxSize 必须大于 0, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+            // caffeine 为可选依赖
+            if (!ClassUtils.isPresent("com.github.benmanes.caffeine.cache.Caffeine", RpcClientMethodDescriptor.class.getClassLoader())) {
+                throw new RuntimeException("响应缓存需要引入 com.github.ben-manes.caffeine:caffeine, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+            if (cacheKeys.length > 0) {
+                if (parameterKinds.length == 1 && parameterKinds[0] == ParameterKind.RPC_DTO) {
+                    cacheFieldWriters = getFieldWriters(parameters[0].getType(), cacheKeys);
+                    for (int i = 0; i < cacheKeys.length; i++) {
+                        if (cacheFieldWriters[i] == null) {
+                            throw new RuntimeException("未找到缓存字段, CacheKey: " + cacheKeys[i] + ", Class: " + rpcClientName + ", Method: " + method.getName());
+                        }
+                    }
+                } else if (Arrays.stream(parameterKinds).allMatch(kind -> kind == ParameterKind.NAMED)) {
+                    for (String cacheKey : cacheKeys) {
+                        if (!Arrays.asList(parameterNames).contains(cacheKey)) {
+                            throw new RuntimeException("未找到缓存参数, CacheKey: " + cacheKey + ", Class: " + rpcClientName + ", Method: " + method.getName());
+                        }
+                    }
+                }
+            }
+            // W-TinyLFU 淘汰, 写入后 cacheTtl 毫秒过期
+            cache = Caffeine.newBuilder()
+                    .maximumSize(rpcClientMethod.cacheMaxSize())
+                    .expireAfterWrite(Duration.ofMillis(rpcClientMethod.cacheTtl()))
+                    .build();
+        }
+        if (rpcClientMethod.coalesce() && rpcType != RpcType.SYNC) {
+            throw new RuntimeException("只有 SYNC RpcClient 支持合并请求, Class: " + rpcClientName + ", Method: " + method.getName());
+        }
+        // 对冲请求
+        RpcHedgePolicy hedgePolicy = null;
+        if (rpcClientMethod.maxHedges() > 0) {
+            if (rpcType != RpcType.SYNC) {
+                throw new RuntimeException("只有 SYNC RpcClient 支持对冲请求, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+            if (rpcClientMethod.hedgeDelay() < 0) {
+                throw new RuntimeException("hedgeDelay 不能小于 0, Class: " + rpcClientName + ", Method: " + method.getName());
+            }
+            hedgePolicy = new RpcHedgePolicy(rpcClientMethod.hedgeDelay(), rpcClientMethod.maxHedges());
+        }
+        return new RpcClientMethodDescriptor(rpcClientName, method.getName(), command, future, resultType, parameterKinds, parameterNames, rpcName, partitionNum, partitionKey, partitionFieldWriter, cache, cacheKeys, cacheFieldWriters, rpcClientMethod.coalesce(), hedgePolicy);
+    }
+
+    /**
+     * 解析 RpcResult&lt;T&gt; 中的 T
+     */
+    private static Type getResultType(Type returnType) {
+        if (returnType instanceof ParameterizedType parameterizedType) {
+            final Type resultType = parameterizedType.getActualTypeArguments()[0];
+            if (resultType instanceof Class<?> || resultType instanceof ParameterizedType) {
+                return resultType;
+            }
+        }
+        return Object.class;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FieldWriter<Object> getFieldWriter(Class<?> clazz, String fieldName) {
+        return (FieldWriter<Object>) JSONFactory.getDefaultObjectWriterProvider().getObjectWriter(clazz).getFieldWriter(fieldName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FieldWriter<Object>[] getFieldWriters(Class<?> clazz, String[] fieldNames) {
+        final FieldWriter<Object>[] fieldWriters = (FieldWriter<Object>[]) new FieldWriter<?>[fieldNames.length];
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldWriters[i] = getFieldWriter(clazz, fieldNames[i]);
+        }
+        return fieldWriters;
+    }
+
+    String getCommand() {
+        return this.command;
+    }
+
+    boolean isFuture() {
+        return this.future;
+    }
+
+    Type getResultType() {
+        return this.resultType;
+    }
+
+    /**
+     * 组装 data, 唯一 @RpcDTO 参数时直接返回 JavaBean, 否则组装为 JSONObject
+     */
+    Object encode(Object[] args) {
+        if (this.typed) {
+            return args[0];
+        }
+        JSONObject data = new JSONObject();
+        for (int i = 0; i < this.parameterKinds.length; i++) {
+            switch (this.parameterKinds[i]) {
+                case JSON_OBJECT -> data.putAll((JSONObject) args[i]);
+                case RPC_DTO -> data = (JSONObject) JSON.toJSON(args[i]);
+                default -> data.put(this.parameterNames[i], args[i]);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * 计算路由, 未配置 partitionKey 时直接使用 rpcName
+     */
+    String getRoutingKey(Object data) {
+        if (this.partitionKey == null) {
+            return this.rpcName;
+        }
+        final Object partitionValue;
+        if (this.partitionFieldWriter != null) {
+            partitionValue = data == null ? null : this.partitionFieldWriter.getFieldValue(data);
+        } else {
+            final JSONObject json = (JSONObject) data;
+            if (json == null || !json.containsKey(this.partitionKey)) {
+                throw new RuntimeException("未找到分区字段, PartitionKey: " + this.partitionKey + ", RpcClient: " + this.rpcClientName + ", Method: " + this.methodName);
+            }
+            partitionValue = json.get(this.partitionKey);
+        }
+        if (partitionValue == null) {
+            throw new RuntimeException("分区字段不能为空, PartitionKey: " + this.partitionKey + ", RpcClient: " + this.rpcClientName + ", Method: " + this.methodName);
+        }
+        return RpcUtil.getRoutingKey(this.rpcName, this.partitionNum, partitionValue);
+    }
+
+    /**
+     * 响应缓存, 未开启时为 null
+     */
+    Cache<String, CachedReply> getCache() {
+        return this.cache;
+    }
+
+    /**
+     * 进行中的请求, 未开启合并时为 null
+     */
+    Map<ByteBuffer, CompletableFuture<RpcResult<Object>>> getInFlight() {
+        return this.inFlight;
+    }
+
+    /**
+     * 对冲请求策略, 未开启时为 null
+     */
+    RpcHedgePolicy getHedgePolicy() {
+        return this.hedgePolicy;
+    }
+
+    /**
+     * 缓存 key, 未配置 cacheKey 时使用全部参数
+     */
+    String getCacheKey(Object data) {
+        // 调用方的参数可能被修改, JavaBean 也不一定实现了 equals, 统一使用 JSON 文本
+        if (this.cacheKeys.length == 0) {
+            return JSON.toJSONString(data);
+        }
+        final Object[] values = new Object[this.cacheKeys.length];
+        for (int i = 0; i < this.cacheKeys.length; i++) {
+            if (this.cacheFieldWriters != null) {
+                values[i] = data == null ? null : this.cacheFieldWriters[i].getFieldValue(data);
+            } else {
+                values[i] = ((JSONObject) data).get(this.cacheKeys[i]);
+            }
+        }
+        return JSON.toJSONString(values);
+    }
+
+    /**
+     * 延迟时间(毫秒)
+     */
+    long getDelay(Object data) {
+        if (data instanceof RpcDelayDTO rpcDelayDTO) {
+            return rpcDelayDTO.getDelay();
+        }
+        if (data instanceof JSONObject json) {
+            return json.getLongValue("delay", 0);
+        }
+        return 0;
+    }
+
+}
@@ -1,25 +1,39 @@
 package vip.toby.rpc.client;
 
-import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONB;
-import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.amqp.core.AmqpReplyTimeoutException;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.scheduling.TaskScheduler;
 import vip.toby.rpc.annotation.RpcClientMethod;
-import vip.toby.rpc.annotation.RpcDTO;
-import vip.toby.rpc.entity.*;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecs;
+import vip.toby.rpc.codec.RpcCompressor;
+import vip.toby.rpc.entity.RpcRequest;
+import vip.toby.rpc.entity.RpcResult;
+import vip.toby.rpc.entity.RpcStatus;
+import vip.toby.rpc.entity.RpcType;
 import vip.toby.rpc.properties.RpcProperties;
-import vip.toby.rpc.util.RpcUtil;
+import vip.toby.rpc.util.RpcMetrics;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * RpcClientProxy
@@ -29,196 +43,449 @@ import java.util.UUID;
 @Slf4j
 public class RpcClientProxy<T> implements InvocationHandler {
 
-    private final Class<T> rpcClientInterface;
     private final String rpcName;
     private final RpcType rpcType;
+    private final RpcCodec rpcCodec;
+    private final RpcCompressor rpcCompressor;
     private final RabbitTemplate sender;
+    // 批量发送时不使用 CorrelationData, 否则 BatchingRabbitTemplate 会直接单条发送
+    private final boolean batching;
+    private final AsyncRabbitTemplate syncFutureSender;
+    // 为 null 时不跟踪发布确认
+    private final RpcConfirmWindow confirmWindow;
+    // 为 null 时不记录指标
+    private final RpcMetrics rpcMetrics;
+    // 为 null 时不熔断
+    private final RpcCircuitBreakers circuitBreakers;
+    // 为 null 时没有对冲方法
+    private final TaskScheduler hedgeScheduler;
+    // 只记录发送失败, 不重建发送组件, 通道和连接由 Spring AMQP 自行恢复
+    private final RpcSenderFailureRecorder senderFailureRecorder;
     private final RpcProperties rpcProperties;
     private final int replyTimeout;
-    private final int partitionNum;
+    private final Map<Method, RpcClientMethodDescriptor> descriptors;
 
     RpcClientProxy(
             Class<T> rpcClientInterface,
             String rpcName,
             RpcType rpcType,
+            RpcCodec rpcCodec,
+            RpcCompressor rpcCompressor,
             RabbitTemplate sender,
+            AsyncRabbitTemplate syncFutureSender,
+            RpcConfirmWindow confirmWindow,
+            RpcMetrics rpcMetrics,
+            RpcCircuitBreakers circuitBreakers,
+            TaskScheduler hedgeScheduler,
+            RpcSenderFailureRecorder senderFailureRecorder,
             RpcProperties rpcProperties,
             int replyTimeout,
             int partitionNum
     ) {
-        this.rpcClientInterface = rpcClientInterface;
         this.rpcName = rpcName;
         this.rpcType = rpcType;
+        this.rpcCodec = rpcCodec;
+        this.rpcCompressor = rpcCompressor;
         this.sender = sender;
+        this.batching = sender instanceof BatchingRabbitTemplate;
+        this.syncFutureSender = syncFutureSender;
+        this.confirmWindow = confirmWindow;
+        this.rpcMetrics = rpcMetrics;
+        this.circuitBreakers = circuitBreakers;
+        this.hedgeScheduler = hedgeScheduler;
+        this.senderFailureRecorder = senderFailureRecorder;
         this.rpcProperties = rpcProperties;
         this.replyTimeout = replyTimeout;
-        this.partitionNum = partitionNum;
+        // 启动时解析所有方法, 配置错误直接失败
+        this.descriptors = RpcClientMethodDescriptor.build(rpcClientInterface, rpcName, rpcType, partitionNum);
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
-        // 获取方法注解
-        final RpcClientMethod rpcClientMethod = method.getAnnotation(RpcClientMethod.class);
-        if (rpcClientMethod == null) {
+        final RpcClientMethodDescriptor descriptor = this.descriptors.get(method);
+        if (descriptor == null) {
             try {
-                if (Object.class.equals(method.getDeclaringClass())) {
-                    return method.invoke(this, args);
-                }
-                throw new RuntimeException("未加 @RpcClientMethod, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+                return method.invoke(this, args);
             } catch (Throwable t) {
                 throw new RuntimeException(t);
             }
         }
-        if (this.rpcType == RpcType.ASYNC && method.getGenericReturnType() != Void.TYPE) {
-            throw new RuntimeException("ASYNC RpcClient 返回类型只能为 void, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
-        }
-        if (this.rpcType == RpcType.DELAY && method.getGenericReturnType() != Void.TYPE) {
-            throw new RuntimeException("DELAY RpcClient 返回类型只能为 void, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
-        }
-        if (this.rpcType == RpcType.SYNC && method.getGenericReturnType() != RpcResult.class) {
-            throw new RuntimeException("SYNC RpcClient 返回类型只能为 RpcResult, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
-        }
-        String methodName = rpcClientMethod.value();
-        if (StringUtils.isBlank(methodName)) {
-            methodName = method.getName();
-        }
-        if (this.rpcType == RpcType.SYNC) {
-            validateSyncPartitionConfig(method, rpcClientMethod);
-        }
+        final String methodName = descriptor.getCommand();
         // 组装 data
-        JSONObject data = new JSONObject();
-        final Parameter[] parameters = method.getParameters();
-        if (this.rpcType == RpcType.DELAY) {
-            if (parameters.length != 1) {
-                throw new RuntimeException("DELAY RpcClient 只能包含唯一参数, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
-            }
-            final Type type = parameters[0].getParameterizedType();
-            if (!(type instanceof Class<?> clazz)) {
-                throw new RuntimeException("DELAY RpcClient 参数必须继承 RpcDelayDTO, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+        final Object paramData = descriptor.encode(args);
+        // 响应缓存
+        final String cacheKey = descriptor.getCache() == null ? null : descriptor.getCacheKey(paramData);
+        if (cacheKey != null) {
+            final RpcClientMethodDescriptor.CachedReply cached = descriptor.getCache().getIfPresent(cacheKey);
+            if (this.rpcMetrics != null) {
+                this.rpcMetrics.cache(methodName, cached != null);
             }
-            if (!(RpcDelayDTO.class.isAssignableFrom(clazz))) {
-                throw new RuntimeException("DELAY RpcClient 参数必须继承 RpcDelayDTO, Class: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+            if (cached != null) {
+                log.debug("Cached! RpcClient: {}, Method: {}, Param: {}", this.rpcName, methodName, paramData);
+                final RpcResult<Object> rpcResult = cached.rpcCodec().decodeReply(cached.body(), descriptor.getResultType());
+                return descriptor.isFuture() ? CompletableFuture.completedFuture(rpcResult) : rpcResult;
             }
         }
-        for (int i = 0; i < parameters.length; i++) {
-            final Parameter parameter = parameters[i];
-            if (parameter.getType() == JSONObject.class) {
-                // JSONObject
-                data.putAll((JSONObject) args[i]);
-            } else if (parameter.getType().getAnnotation(RpcDTO.class) != null) {
-                // 添加 @RpcDTO 的 JavaBean
-                data = (JSONObject) JSON.toJSON(args[i]);
-            } else {
-                // Spring-Boot 框架默认已加上 -parameters 编译参数
-                data.put(parameter.getName(), args[i]);
-            }
-        }
-        // 调用参数
-        final JSONObject paramData = new JSONObject();
-        paramData.put("command", methodName);
-        paramData.put("data", data);
-        final String partitionKey = rpcClientMethod.partitionKey();
-        final Object partitionValue = getPartitionValue(method, partitionKey, data);
-        final String routingKey = RpcUtil.getRoutingKey(this.rpcName, this.partitionNum, partitionValue);
+        final String routingKey = descriptor.getRoutingKey(paramData);
         // MessageProperties
         final MessageProperties messageProperties = new MessageProperties();
-        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_BYTES);
+        messageProperties.setContentType(this.rpcCodec.getContentType());
         messageProperties.setCorrelationId(UUID.randomUUID().toString());
         if (this.rpcType == RpcType.DELAY) {
-            messageProperties.setDelayLong(data.getLongValue("delay", 0));
+            messageProperties.setDelayLong(descriptor.getDelay(paramData));
+        }
+        if (this.rpcType == RpcType.SYNC) {
+            // 声明可以解压回复
+            messageProperties.setHeader(RpcCompressor.ACCEPT_ENCODING, RpcCompressor.DEFLATE);
+            // 超过 replyTimeout 后客户端不再等待, 服务端直接丢弃
+            final long now = System.currentTimeMillis();
+            messageProperties.setHeader(RpcRequest.TIMESTAMP, now);
+            messageProperties.setHeader(RpcRequest.DEADLINE, now + this.replyTimeout);
+        }
+        // 消息体, 超过阈值时压缩
+        byte[] body = this.rpcCodec.encodeRequest(methodName, paramData);
+        // 合并相同的并发请求, 只有第一个调用发送请求, 其余调用等待同一个结果
+        final ByteBuffer flightKey = descriptor.getInFlight() == null ? null : ByteBuffer.wrap(body);
+        final CompletableFuture<RpcResult<Object>> flight = flightKey == null ? null : new CompletableFuture<>();
+        if (flightKey != null) {
+            final CompletableFuture<RpcResult<Object>> leader = descriptor.getInFlight().putIfAbsent(flightKey, flight);
+            if (leader != null) {
+                if (this.rpcMetrics != null) {
+                    this.rpcMetrics.coalesced(methodName);
+                }
+                log.debug("Coalesced! RpcClient: {}, Method: {}, Param: {}", this.rpcName, methodName, paramData);
+                return await(descriptor, leader);
+            }
+        }
+        final byte[] compressed = this.rpcCompressor.compress(body);
+        if (compressed != null) {
+            body = compressed;
+            messageProperties.setContentEncoding(RpcCompressor.DEFLATE);
+        }
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.requestSize(body.length);
         }
         // Message
-        final Message message = new Message(JSONB.toBytes(paramData), messageProperties);
+        final Message message = new Message(body, messageProperties);
         // CorrelationData
-        final CorrelationData correlationData = new CorrelationData(UUID.randomUUID().toString());
+        final CorrelationData correlationData = this.batching ? null : new CorrelationData(UUID.randomUUID().toString());
+        CompletableFuture<Void> confirmFuture = null;
+        final long start = System.nanoTime();
+        // 熔断时直接返回, 不发送请求; 取得许可后紧接着进入 try, 每个出口都通过 record 返回结果
+        final RpcCircuitBreaker.Phase permit = this.circuitBreakers == null ? null : this.circuitBreakers.get(methodName).tryAcquire();
+        if (this.circuitBreakers != null && permit == null) {
+            final RpcResult<Object> rpcResult = RpcResult.build(RpcStatus.CIRCUIT_OPEN);
+            if (flight != null) {
+                land(descriptor, flightKey, flight, rpcResult, null);
+            }
+            log.debug("Circuit Open! RpcClient: {}, Method: {}, Param: {}", this.rpcName, methodName, paramData);
+            return descriptor.isFuture() ? CompletableFuture.completedFuture(rpcResult) : rpcResult;
+        }
+        // 非阻塞调用在完成时才结束计数
+        boolean pending = false;
+        // 阻塞调用的对冲请求
+        CompletableFuture<RpcResult<Object>> hedged = null;
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.begin();
+        }
         try {
-            if (this.rpcType == RpcType.ASYNC) {
-                this.sender.send("simple.rpc.async", routingKey, message, correlationData);
-                log.debug("RpcClient: {}, Method: {}, Param: {}", this.rpcName, methodName, paramData);
-                return null;
+            // 发布确认窗口, 窗口已满时按配置阻塞、失败或者丢弃; 只用于 ASYNC/DELAY, 与熔断不会同时开启
+            if (this.confirmWindow != null) {
+                try {
+                    confirmFuture = this.confirmWindow.acquire(correlationData);
+                } catch (RuntimeException e) {
+                    // 窗口已满(FAIL_FAST)或者等待超时(BLOCK)
+                    if (this.rpcMetrics != null) {
+                        this.rpcMetrics.error(RpcMetrics.REJECTED);
+                    }
+                    throw e;
+                }
+                if (confirmFuture == null) {
+                    if (this.rpcMetrics != null) {
+                        this.rpcMetrics.error(RpcMetrics.SHED);
+                    }
+                    log.warn("Shed! RpcClient: {}, Method: {}, Param: {}", this.rpcName, methodName, paramData);
+                    final RuntimeException shed = new RuntimeException("发布确认窗口已满, 已丢弃, RpcClient: " + this.rpcName);
+                    if (flight != null) {
+                        land(descriptor, flightKey, flight, null, shed);
+                    }
+                    return descriptor.isFuture() ? CompletableFuture.failedFuture(shed) : null;
+                }
             }
-            if (this.rpcType == RpcType.DELAY) {
-                this.sender.send("simple.rpc.delay", routingKey, message, correlationData);
+            if (this.rpcType == RpcType.ASYNC || this.rpcType == RpcType.DELAY) {
+                this.sender.send(this.rpcType == RpcType.ASYNC ? "simple.rpc.async" : "simple.rpc.delay", routingKey, message, correlationData);
+                record(methodName, RpcStatus.OK, start, permit);
                 log.debug("RpcClient: {}, Method: {}, Param: {}", this.rpcName, methodName, paramData);
-                return null;
+                return descriptor.isFuture() ? confirmFuture : null;
             }
             // 发起请求并返回结果
-            final long start = System.currentTimeMillis();
-            final Message resultObj = this.sender.sendAndReceive("simple.rpc.sync", routingKey, message, correlationData);
-            if (resultObj == null) {
-                // 无返回任何结果，说明服务器负载过高，没有及时处理请求，导致超时
-                log.error("Unavailable! Duration: {}ms, RpcClient: {}, Method: {}, Param: {}", System.currentTimeMillis() - start, this.rpcName, methodName, paramData);
-                return RpcResult.build(RpcStatus.UNAVAILABLE);
-            }
-            // 获取调用结果的状态
-            final JSONObject resultJson = JSONB.parseObject(resultObj.getBody());
-            final int code = resultJson.getIntValue("code");
-            final Object resultData = resultJson.get("data");
-            final RpcStatus rpcStatus = RpcStatus.of(code);
-            if (rpcStatus != RpcStatus.OK || resultData == null) {
-                log.error("{}! Duration: {}ms, RpcClient: {}, Method: {}, Param: {}", rpcStatus.getMessage(), System.currentTimeMillis() - start, this.rpcName, methodName, paramData);
-                return RpcResult.build(rpcStatus);
-            }
-            // 获取操作层的状态
-            final RpcResult rpcResult = RpcResult.build(RpcStatus.OK).result(toR(resultData));
-            final long offset = System.currentTimeMillis() - start;
-            if (offset > Math.floor(this.rpcProperties.getClientSlowCallTimePercent() * this.replyTimeout)) {
-                log.warn("Call Slowing! Duration: {}ms, RpcClient: {}, Method: {}, Param: {}, RpcResult: {}", offset, this.rpcName, methodName, paramData, rpcResult);
+            if (descriptor.isFuture() || descriptor.getHedgePolicy() != null) {
+                // 非阻塞调用, 回复或超时时完成; 对冲请求也走非阻塞发送, 阻塞调用在 try 之外等待结果
+                final CompletableFuture<Message> reply = descriptor.getHedgePolicy() == null ? this.syncFutureSender.sendAndReceive("simple.rpc.sync", routingKey, message) : hedge(descriptor, routingKey, message);
+                final CompletableFuture<RpcResult<Object>> future = reply.handle((resultObj, t) -> {
+                    try {
+                        if (t == null) {
+                            return toRpcResult(resultObj, start, descriptor, paramData, cacheKey, permit);
+                        }
+                        final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                        if (cause instanceof AmqpReplyTimeoutException) {
+                            return toRpcResult(null, start, descriptor, paramData, null, permit);
+                        }
+                        throw new CompletionException(cause);
+                    } catch (RuntimeException e) {
+                        // 发送失败或者回复解析失败
+                        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        record(methodName, RpcStatus.FAIL, start, permit);
+                        this.senderFailureRecorder.record(this.rpcName, cause);
+                        log.error("RpcClient: {} Exception! Method: {}, Param: {}", this.rpcName, methodName, paramData);
+                        log.error(cause.getMessage(), cause);
+                        throw e instanceof CompletionException completionException ? completionException : new CompletionException(e);
+                    } finally {
+                        if (this.rpcMetrics != null) {
+                            this.rpcMetrics.end();
+                        }
+                    }
+                });
+                if (flight != null) {
+                    future.whenComplete((rpcResult, t) -> land(descriptor, flightKey, flight, rpcResult, t));
+                }
+                pending = true;
+                if (descriptor.isFuture()) {
+                    return future;
+                }
+                hedged = future;
             } else {
-                log.debug("Duration: {}ms, RpcClient: {}, Method: {}, Param: {}, RpcResult: {}", offset, this.rpcName, methodName, paramData, rpcResult);
+                final Message resultObj = this.sender.sendAndReceive("simple.rpc.sync", routingKey, message, correlationData);
+                final RpcResult<Object> rpcResult = toRpcResult(resultObj, start, descriptor, paramData, cacheKey, permit);
+                if (flight != null) {
+                    land(descriptor, flightKey, flight, rpcResult, null);
+                }
+                return rpcResult;
             }
-            return rpcResult;
         } catch (Exception e) {
-            this.sender.destroy();
+            record(methodName, RpcStatus.FAIL, start, permit);
+            if (flight != null) {
+                land(descriptor, flightKey, flight, null, e);
+            }
+            if (confirmFuture != null) {
+                // 未发出的消息不会收到确认, 直接释放窗口
+                correlationData.getFuture().completeExceptionally(e);
+            }
+            this.senderFailureRecorder.record(this.rpcName, e);
             log.error("RpcClient: {} Exception! Method: {}, Param: {}", this.rpcName, methodName, paramData);
             log.error(e.getMessage(), e);
+            // 返回 CompletableFuture 的方法不同步抛出异常
+            if (descriptor.isFuture()) {
+                return CompletableFuture.failedFuture(e);
+            }
             throw new RuntimeException(e);
+        } finally {
+            if (this.rpcMetrics != null && !pending) {
+                this.rpcMetrics.end();
+            }
         }
+        // 失败已在 future 中记录, 不再走上面的异常处理
+        return await(descriptor, hedged);
     }
 
-    private R toR(Object resultData) {
-        final JSONObject result = JSONObject.parseObject(resultData.toString());
-        if (result != null) {
-            final int codeValue = result.getIntValue("code", RCode.FAIL.getCode());
-            String message = result.getString("msg");
-            if (StringUtils.isBlank(message)) {
-                message = RCode.FAIL.getMessage();
+    /**
+     * 发送首次请求, 每隔对冲延迟没有回复时使用新的 correlationId 再发送一次, 第一个正常的回复为准, 其余回复忽略
+     * <p>
+     * 首次请求超时即整体超时, 对冲请求沿用首次请求的截止时间
+     */
+    private CompletableFuture<Message> hedge(RpcClientMethodDescriptor descriptor, String routingKey, Message message) {
+        final RpcHedgePolicy hedgePolicy = descriptor.getHedgePolicy();
+        final String methodName = descriptor.getCommand();
+        final RpcHedgeRace race = new RpcHedgeRace(hedgePolicy, this::isRejection);
+        final CompletableFuture<Message> first = race.getResult();
+        final Runnable onHedgeWon = () -> {
+            if (this.rpcMetrics != null) {
+                this.rpcMetrics.hedge(methodName, RpcMetrics.HEDGE_WON);
             }
-            final ICode code = ICode.build(codeValue, message);
-            return R.build(code).result(result.get("data")).detail(result.get("det"));
+        };
+        hedgePolicy.deposit();
+        // 首次请求的发送异常直接抛出, 和不对冲时一致
+        race.attempt(() -> this.syncFutureSender.sendAndReceive("simple.rpc.sync", routingKey, message), false, onHedgeWon);
+        final long delay = hedgePolicy.getDelay();
+        if (delay <= 0) {
+            // 样本不足, 不对冲
+            return first;
         }
-        return R.fail();
+        final List<ScheduledFuture<?>> scheduledFutures = new ArrayList<>(hedgePolicy.getMaxHedges());
+        for (int i = 1; i <= hedgePolicy.getMaxHedges() && delay * i < this.replyTimeout; i++) {
+            scheduledFutures.add(this.hedgeScheduler.schedule(() -> {
+                if (first.isDone()) {
+                    return;
+                }
+                if (!hedgePolicy.withdraw()) {
+                    if (this.rpcMetrics != null) {
+                        this.rpcMetrics.hedge(methodName, RpcMetrics.HEDGE_THROTTLED);
+                    }
+                    return;
+                }
+                if (this.rpcMetrics != null) {
+                    this.rpcMetrics.hedge(methodName, RpcMetrics.HEDGE_SENT);
+                }
+                final Message hedgeMessage = copy(message);
+                log.debug("Hedged! RpcClient: {}, Method: {}, CorrelationId: {}", this.rpcName, methodName, hedgeMessage.getMessageProperties().getCorrelationId());
+                race.attempt(() -> {
+                    try {
+                        return this.syncFutureSender.sendAndReceive("simple.rpc.sync", routingKey, hedgeMessage);
+                    } catch (Exception e) {
+                        log.warn("RpcClient: {} Hedge Exception! Method: {}, {}", this.rpcName, methodName, e.getMessage());
+                        return CompletableFuture.failedFuture(e);
+                    }
+                }, true, onHedgeWon);
+            }, Instant.now().plusMillis(delay * i)));
+        }
+        // 已有结果后取消还未发出的对冲请求
+        first.whenComplete((resultObj, t) -> scheduledFutures.forEach(scheduledFuture -> scheduledFuture.cancel(false)));
+        return first;
     }
 
-    @Override
-    public String toString() {
-        return "RpcClient-" + this.rpcName;
+    /**
+     * 对冲时还有其他请求未完成则不作为结果的回复
+     */
+    private boolean isRejection(Message resultObj) {
+        try {
+            final RpcCodec replyCodec = RpcCodecs.of(resultObj.getMessageProperties().getContentType(), this.rpcCodec);
+            // 只读取状态码, R.result 不解析
+            final RpcResult<Object> rpcResult = replyCodec.decodeReply(this.rpcCompressor.decompress(resultObj.getBody(), resultObj.getMessageProperties().getContentEncoding()), Object.class);
+            return RpcHedgeRace.isRejection(rpcResult);
+        } catch (RuntimeException e) {
+            // 无法解析的回复交给 toRpcResult 处理
+            return false;
+        }
     }
 
-    private Object getPartitionValue(Method method, String partitionKey, JSONObject data) {
-        if (StringUtils.isBlank(partitionKey)) {
-            return null;
+    /**
+     * 对冲请求使用新的 correlationId, 其余属性与首次请求相同; 通过 RpcRequest.HEDGE 标记首次请求的 correlationId
+     */
+    private static Message copy(Message message) {
+        final MessageProperties source = message.getMessageProperties();
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(source.getContentType());
+        messageProperties.setContentEncoding(source.getContentEncoding());
+        messageProperties.setCorrelationId(UUID.randomUUID().toString());
+        source.getHeaders().forEach(messageProperties::setHeader);
+        messageProperties.setHeader(RpcRequest.HEDGE, source.getCorrelationId());
+        // 排队时间从对冲请求发出时计算
+        messageProperties.setHeader(RpcRequest.TIMESTAMP, System.currentTimeMillis());
+        return new Message(message.getBody(), messageProperties);
+    }
+
+    /**
+     * 等待进行中的请求, 返回 CompletableFuture 时使用副本, 避免调用方完成共享的结果
+     */
+    private Object await(RpcClientMethodDescriptor descriptor, CompletableFuture<RpcResult<Object>> leader) {
+        if (descriptor.isFuture()) {
+            return leader.copy();
         }
-        if (!RpcUtil.partitionEnabled(this.partitionNum)) {
-            throw new RuntimeException("未开启分区配置, RpcClient: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
         }
-        if (!data.containsKey(partitionKey)) {
-            throw new RuntimeException("未找到分区字段, PartitionKey: " + partitionKey + ", RpcClient: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+    }
+
+    /**
+     * 请求完成, 先移除再通知等待的调用, 之后的调用重新发送请求
+     */
+    private void land(RpcClientMethodDescriptor descriptor, ByteBuffer flightKey, CompletableFuture<RpcResult<Object>> flight, RpcResult<Object> rpcResult, Throwable t) {
+        descriptor.getInFlight().remove(flightKey, flight);
+        if (t != null) {
+            flight.completeExceptionally(t);
+        } else {
+            flight.complete(rpcResult);
         }
-        final Object partitionValue = data.get(partitionKey);
-        if (partitionValue == null) {
-            throw new RuntimeException("分区字段不能为空, PartitionKey: " + partitionKey + ", RpcClient: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+    }
+
+    /**
+     * 每次发出的请求只记录一次结果, 同时计入熔断统计
+     */
+    private void record(String command, RpcStatus rpcStatus, long start, RpcCircuitBreaker.Phase permit) {
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.record(command, rpcStatus, System.nanoTime() - start);
+        }
+        if (permit != null) {
+            this.circuitBreakers.get(command).onResult(permit, rpcStatus);
         }
-        return partitionValue;
     }
 
-    private void validateSyncPartitionConfig(Method method, RpcClientMethod rpcClientMethod) {
-        if (RpcUtil.partitionEnabled(this.partitionNum)) {
-            throw new RuntimeException("SYNC RpcClient 不支持分区配置, RpcClient: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+    /**
+     * 解析回复, cacheKey 不为 null 时缓存成功的回复, UNAVAILABLE/FAIL/NOT_FOUND 以及业务失败都不缓存
+     */
+    private RpcResult<Object> toRpcResult(Message resultObj, long start, RpcClientMethodDescriptor descriptor, Object paramData, String cacheKey, RpcCircuitBreaker.Phase permit) {
+        final String methodName = descriptor.getCommand();
+        final long offset = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (resultObj == null) {
+            // 无返回任何结果，说明服务器负载过高，没有及时处理请求，导致超时
+            record(methodName, RpcStatus.UNAVAILABLE, start, permit);
+            if (this.rpcMetrics != null) {
+                this.rpcMetrics.error(RpcMetrics.TIMEOUT);
+            }
+            log.error("Unavailable! Duration: {}ms, RpcClient: {}, Method: {}, Param: {}", offset, this.rpcName, methodName, paramData);
+            return RpcResult.build(RpcStatus.UNAVAILABLE);
         }
-        if (StringUtils.isNotBlank(rpcClientMethod.partitionKey())) {
-            throw new RuntimeException("SYNC RpcClientMethod 不支持 partitionKey, RpcClient: " + this.rpcClientInterface.getName() + ", Method: " + method.getName());
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.responseSize(resultObj.getBody().length);
         }
+        // 获取调用结果的状态, R.result 在首次访问时才按声明类型解析
+        final RpcCodec replyCodec = RpcCodecs.of(resultObj.getMessageProperties().getContentType(), this.rpcCodec);
+        final byte[] body = this.rpcCompressor.decompress(resultObj.getBody(), resultObj.getMessageProperties().getContentEncoding());
+        final RpcResult<Object> rpcResult = replyCodec.decodeReply(body, descriptor.getResultType());
+        record(methodName, rpcResult.getStatus(), start, permit);
+        if (!rpcResult.isOk()) {
+            if (this.rpcMetrics != null && rpcResult.getStatus() == RpcStatus.NOT_FOUND) {
+                this.rpcMetrics.error(RpcMetrics.NOT_FOUND);
+            }
+            log.error("{}! Duration: {}ms, RpcClient: {}, Method: {}, Param: {}", rpcResult.getStatus().getMessage(), offset, this.rpcName, methodName, paramData);
+            return rpcResult;
+        }
+        if (cacheKey != null && rpcResult.getR() != null && rpcResult.getR().isOk()) {
+            descriptor.getCache().put(cacheKey, new RpcClientMethodDescriptor.CachedReply(replyCodec, body));
+        }
+        if (offset > Math.floor(this.rpcProperties.getClientSlowCallTimePercent() * this.replyTimeout)) {
+            log.warn("Call Slowing! Duration: {}ms, RpcClient: {}, Method: {}, Param: {}, RpcResult: {}", offset, this.rpcName, methodName, paramData, rpcResult);
+        } else {
+            log.debug("Duration: {}ms, RpcClient: {}, Method: {}, Param: {}, RpcResult: {}", offset, this.rpcName, methodName, paramData, rpcResult);
+        }
+        return rpcResult;
+    }
+
+    @Override
+    public String toString() {
+        return "RpcClient-" + this.rpcName;
+    }
+
+    /**
+     * 是否为 CompletableFuture&lt;RpcResult&gt; 或者 CompletableFuture&lt;RpcResult&lt;T&gt;&gt; 返回类型
+     */
+    static boolean isFutureReturnType(Method method) {
+        return method.getGenericReturnType() instanceof ParameterizedType parameterizedType
+                && parameterizedType.getRawType() == CompletableFuture.class
+                && isRpcResultType(parameterizedType.getActualTypeArguments()[0]);
+    }
+
+    /**
+     * 是否为 CompletableFuture&lt;Void&gt; 返回类型, ASYNC/DELAY 在 Broker 确认后完成
+     */
+    static boolean isConfirmReturnType(Method method) {
+        return method.getGenericReturnType() instanceof ParameterizedType parameterizedType
+                && parameterizedType.getRawType() == CompletableFuture.class
+                && parameterizedType.getActualTypeArguments()[0] == Void.class;
+    }
+
+    /**
+     * 是否开启了对冲请求
+     */
+    static boolean isHedged(Method method) {
+        final RpcClientMethod rpcClientMethod = method.getAnnotation(RpcClientMethod.class);
+        return rpcClientMethod != null && rpcClientMethod.maxHedges() > 0;
+    }
+
+    private static boolean isRpcResultType(Type type) {
+        return type == RpcResult.class || type instanceof ParameterizedType parameterizedType && parameterizedType.getRawType() == RpcResult.class;
     }
 
 }
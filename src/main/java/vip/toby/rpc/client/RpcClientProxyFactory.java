@@ -1,8 +1,11 @@
 package vip.toby.rpc.client;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.BatchingRabbitTemplate;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
@@ -11,15 +14,23 @@ import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.core.retry.RetryPolicy;
 import org.springframework.core.retry.RetryTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import vip.toby.rpc.annotation.RpcClient;
+import vip.toby.rpc.codec.RpcBatchingStrategy;
+import vip.toby.rpc.codec.RpcCodecs;
+import vip.toby.rpc.codec.RpcCompressor;
 import vip.toby.rpc.entity.RpcType;
 import vip.toby.rpc.properties.RpcProperties;
+import vip.toby.rpc.util.RpcMetrics;
 import vip.toby.rpc.util.RpcUtil;
 
 import javax.annotation.Nonnull;
 import java.lang.reflect.Proxy;
+import java.util.Arrays;
 
 /**
  * RpcClientProxyFactory
@@ -27,13 +38,15 @@ import java.lang.reflect.Proxy;
  * @author toby
  */
 @Slf4j
-public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAware {
+public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAware, ApplicationEventPublisherAware {
 
     private BeanFactory beanFactory;
+    private ApplicationEventPublisher applicationEventPublisher;
     private final Class<T> rpcClientInterface;
     private ConnectionFactory connectionFactory;
     private DirectExchange syncReplyDirectExchange;
     private RpcProperties rpcProperties;
+    private MeterRegistry meterRegistry;
 
     public RpcClientProxyFactory(Class<T> rpcClientInterface) {
         this.rpcClientInterface = rpcClientInterface;
@@ -44,24 +57,66 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
         this.beanFactory = beanFactory;
     }
 
+    @Override
+    public void setApplicationEventPublisher(@Nonnull ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public T getObject() {
         RabbitTemplate sender;
+        AsyncRabbitTemplate syncFutureSender = null;
+        RpcConfirmWindow confirmWindow = null;
+        RpcCircuitBreakers circuitBreakers = null;
+        ThreadPoolTaskScheduler hedgeScheduler = null;
         final RpcClient rpcClient = this.rpcClientInterface.getAnnotation(RpcClient.class);
         assert rpcClient != null;
         final RpcType rpcType = rpcClient.type();
         final String rpcName = RpcUtil.getRpcName(rpcType, rpcClient.name());
         final int replyTimeout = rpcClient.replyTimeout();
         final int partitionNum = rpcClient.partitionNum();
+        if (rpcClient.batchSize() > 1) {
+            if (rpcType != RpcType.ASYNC) {
+                throw new RuntimeException("只有 ASYNC RpcClient 支持批量发送, RpcClient: " + this.rpcClientInterface.getName());
+            }
+            if (rpcClient.batchTimeout() <= 0) {
+                throw new RuntimeException("batchTimeout 必须大于 0, RpcClient: " + this.rpcClientInterface.getName());
+            }
+        }
+        if (rpcClient.circuitBreakerFailureRate() > 0) {
+            if (rpcType != RpcType.SYNC) {
+                throw new RuntimeException("只有 SYNC RpcClient 支持熔断, RpcClient: " + this.rpcClientInterface.getName());
+            }
+            circuitBreakers = new RpcCircuitBreakers(rpcName, rpcClient, replyTimeout, this.applicationEventPublisher, getMeterRegistry());
+        }
         if (rpcType == RpcType.SYNC) {
             sender = syncSender(rpcName, replyTimeout, getConnectionFactory());
+            // 对冲请求按间隔发送, 由 HedgeScheduler 定时触发
+            final boolean hedging = Arrays.stream(this.rpcClientInterface.getMethods()).anyMatch(RpcClientProxy::isHedged);
+            if (hedging) {
+                hedgeScheduler = registerBean("HedgeScheduler-" + rpcName, ThreadPoolTaskScheduler.class);
+            }
+            // 存在 CompletableFuture<RpcResult> 返回类型或者对冲方法时才实例化
+            if (hedging || Arrays.stream(this.rpcClientInterface.getMethods()).anyMatch(RpcClientProxy::isFutureReturnType)) {
+                syncFutureSender = syncFutureSender(rpcName, replyTimeout, getConnectionFactory());
+            }
         } else if (rpcType == RpcType.ASYNC) {
-            sender = asyncSender(rpcName, getConnectionFactory());
+            sender = asyncSender(rpcName, rpcClient.batchSize(), rpcClient.batchTimeout(), getConnectionFactory());
         } else {
             sender = delaySender(rpcName, getConnectionFactory());
         }
-        return (T) Proxy.newProxyInstance(this.rpcClientInterface.getClassLoader(), new Class[]{this.rpcClientInterface}, new RpcClientProxy<>(this.rpcClientInterface, rpcName, rpcType, sender, getRpcProperties(), replyTimeout, partitionNum));
+        // 配置了窗口或者存在 CompletableFuture<Void> 返回类型时跟踪发布确认
+        if (rpcType != RpcType.SYNC && (rpcClient.confirmWindow() > 0 || Arrays.stream(this.rpcClientInterface.getMethods()).anyMatch(RpcClientProxy::isConfirmReturnType))) {
+            if (rpcClient.batchSize() > 1) {
+                throw new RuntimeException("批量发送不支持发布确认, RpcClient: " + this.rpcClientInterface.getName());
+            }
+            if (!getConnectionFactory().isPublisherConfirms()) {
+                throw new RuntimeException("发布确认需要配置 spring.rabbitmq.publisher-confirm-type=correlated, RpcClient: " + this.rpcClientInterface.getName());
+            }
+            confirmWindow = new RpcConfirmWindow(rpcName, rpcClient.confirmWindow(), rpcClient.confirmMode(), replyTimeout, getMeterRegistry());
+        }
+        return (T) Proxy.newProxyInstance(this.rpcClientInterface.getClassLoader(), new Class[]{this.rpcClientInterface}, new RpcClientProxy<>(this.rpcClientInterface, rpcName, rpcType, RpcCodecs.get(rpcClient.codec()), rpcCompressor(rpcName), sender, syncFutureSender, confirmWindow, getMeterRegistry() != null ? new RpcMetrics(RpcMetrics.CLIENT, rpcName, getMeterRegistry()) : null, circuitBreakers, hedgeScheduler, getRpcSenderFailureRecorder(), getRpcProperties(), replyTimeout, partitionNum));
     }
 
     @Override
@@ -69,11 +124,26 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
         return this.rpcClientInterface;
     }
 
+    /**
+     * 客户端只压缩请求, 默认关闭, 旧版本服务端无法解压
+     */
+    private RpcCompressor rpcCompressor(String rpcName) {
+        final int threshold = getRpcProperties().isCompressRequests() ? getRpcProperties().getCompressThreshold() : 0;
+        return new RpcCompressor(rpcName, threshold, getRpcProperties().getMaxDecompressedSize(), getMeterRegistry());
+    }
+
     /**
      * 实例化 AsyncSender
      */
-    private RabbitTemplate asyncSender(String rpcName, ConnectionFactory connectionFactory) {
-        final RabbitTemplate asyncSender = registerBean("Sender-" + rpcName, RabbitTemplate.class, connectionFactory);
+    private RabbitTemplate asyncSender(String rpcName, int batchSize, int batchTimeout, ConnectionFactory connectionFactory) {
+        final RabbitTemplate asyncSender;
+        if (batchSize > 1) {
+            // 批量发送, 按路由分别累积, 由 BatchScheduler 定时释放
+            final ThreadPoolTaskScheduler batchScheduler = registerBean("BatchScheduler-" + rpcName, ThreadPoolTaskScheduler.class);
+            asyncSender = registerBean("Sender-" + rpcName, BatchingRabbitTemplate.class, connectionFactory, new RpcBatchingStrategy(batchSize, batchTimeout), batchScheduler);
+        } else {
+            asyncSender = registerBean("Sender-" + rpcName, RabbitTemplate.class, connectionFactory);
+        }
         asyncSender.setRoutingKey(rpcName);
         asyncSender.setUserCorrelationId(true);
         return asyncSender;
@@ -105,6 +175,19 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
         return syncSender;
     }
 
+    /**
+     * 实例化 SyncFutureSender, 基于 Direct Reply-To 的非阻塞请求/回复
+     */
+    private AsyncRabbitTemplate syncFutureSender(String rpcName, int replyTimeout, ConnectionFactory connectionFactory) {
+        final RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setRoutingKey(rpcName);
+        rabbitTemplate.setUserCorrelationId(true);
+        final AsyncRabbitTemplate syncFutureSender = registerBean("SyncFutureSender-" + rpcName, AsyncRabbitTemplate.class, rabbitTemplate);
+        syncFutureSender.setReceiveTimeout(replyTimeout);
+        syncFutureSender.start();
+        return syncFutureSender;
+    }
+
     /**
      * 实例化 ConnectionFactory
      */
@@ -129,6 +212,29 @@ public class RpcClientProxyFactory<T> implements FactoryBean<T>, BeanFactoryAwar
         return this.rpcProperties;
     }
 
+    /**
+     * 实例化 RpcSenderFailureRecorder, 所有 RpcClient 共用, 连接监听只注册一次
+     */
+    private RpcSenderFailureRecorder getRpcSenderFailureRecorder() {
+        if (this.beanFactory.containsBean("rpcSenderFailureRecorder")) {
+            return this.beanFactory.getBean("rpcSenderFailureRecorder", RpcSenderFailureRecorder.class);
+        }
+        return registerBean("rpcSenderFailureRecorder", RpcSenderFailureRecorder.class, getConnectionFactory(), getMeterRegistry());
+    }
+
+    /**
+     * 获取 MeterRegistry, 未配置时使用全局 MeterRegistry, 未开启指标或者未引入 micrometer-core 时返回 null, 所有组件都不注册指标
+     */
+    private MeterRegistry getMeterRegistry() {
+        if (!getRpcProperties().isMetricsEnabled() || !RpcUtil.micrometerPresent()) {
+            return null;
+        }
+        if (this.meterRegistry == null) {
+            this.meterRegistry = RpcMetrics.getMeterRegistry(this.beanFactory);
+        }
+        return this.meterRegistry;
+    }
+
     /**
      * 对象实例化并注册到 Spring 上下文
      */
@@ -0,0 +1,105 @@
+package vip.toby.rpc.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import vip.toby.rpc.entity.RpcConfirmMode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RpcConfirmWindow, ASYNC/DELAY 发布确认窗口, 限制未确认的消息数量
+ *
+ * @author toby
+ */
+final class RpcConfirmWindow {
+
+    private final String rpcName;
+    private final RpcConfirmMode confirmMode;
+    private final long timeout;
+    // 为 null 时不限制
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // 未开启指标时为 null
+    private final Counter nackCounter;
+    private final Counter shedCounter;
+
+    /**
+     * @param window      窗口大小, 小于等于 0 时只跟踪确认结果, 不限制数量
+     * @param confirmMode 窗口已满时的处理方式
+     * @param timeout     BLOCK 模式最长等待时间(毫秒)
+     */
+    RpcConfirmWindow(String rpcName, int window, RpcConfirmMode confirmMode, long timeout, MeterRegistry meterRegistry) {
+        this.rpcName = rpcName;
+        this.confirmMode = confirmMode;
+        this.timeout = timeout;
+        this.permits = window > 0 ? new Semaphore(window) : null;
+        if (meterRegistry != null) {
+            Gauge.builder("simple.rpc.client.confirm.in.flight", this.inFlight, AtomicInteger::get).tag("rpcName", rpcName).register(meterRegistry);
+        }
+        this.nackCounter = meterRegistry != null ? Counter.builder("simple.rpc.client.confirm.nack").tag("rpcName", rpcName).register(meterRegistry) : null;
+        this.shedCounter = meterRegistry != null ? Counter.builder("simple.rpc.client.confirm.shed").tag("rpcName", rpcName).register(meterRegistry) : null;
+    }
+
+    /**
+     * 占用窗口并跟踪确认结果, Broker Ack 时完成, SHED 模式窗口已满时返回 null
+     */
+    CompletableFuture<Void> acquire(CorrelationData correlationData) {
+        if (this.permits != null && !tryAcquire()) {
+            increment(this.shedCounter);
+            return null;
+        }
+        this.inFlight.incrementAndGet();
+        return correlationData.getFuture().handle((confirm, t) -> {
+            this.inFlight.decrementAndGet();
+            if (this.permits != null) {
+                this.permits.release();
+            }
+            if (t != null) {
+                increment(this.nackCounter);
+                throw new CompletionException(t);
+            }
+            if (!confirm.ack()) {
+                increment(this.nackCounter);
+                throw new CompletionException(new RuntimeException("Broker Nack! RpcClient: " + this.rpcName + ", Reason: " + confirm.reason()));
+            }
+            return null;
+        });
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private boolean tryAcquire() {
+        switch (this.confirmMode) {
+            case BLOCK -> {
+                try {
+                    if (this.permits.tryAcquire(this.timeout, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new RuntimeException("发布确认窗口已满, 等待超时, RpcClient: " + this.rpcName);
+            }
+            case FAIL_FAST -> {
+                if (this.permits.tryAcquire()) {
+                    return true;
+                }
+                throw new RuntimeException("发布确认窗口已满, RpcClient: " + this.rpcName);
+            }
+            default -> {
+                return this.permits.tryAcquire();
+            }
+        }
+    }
+
+}
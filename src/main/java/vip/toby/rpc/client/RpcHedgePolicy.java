@@ -0,0 +1,97 @@
+package vip.toby.rpc.client;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RpcHedgePolicy, SYNC 方法的对冲请求策略
+ * <p>
+ * 请求发出后 delay 内没有回复时, 使用新的 correlationId 再发送一次, 最多 maxHedges 次, 第一个正常的回复为准;
+ * 每个首次请求存入一个令牌, 每个对冲请求消耗一个令牌, 对冲请求数不会超过首次请求数, 负载最多翻倍
+ *
+ * @author toby
+ */
+final class RpcHedgePolicy {
+
+    // 最近耗时的采样数量
+    private final static int SAMPLE_NUM = 128;
+    // 每采样多少次重新计算 p95, 首次计算前不对冲
+    private final static int REFRESH_NUM = 32;
+    // 令牌上限, 限制空闲后的突发对冲
+    private final static long BUDGET_CAP = 100;
+
+    private final long fixedDelay;
+    private final int maxHedges;
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_NUM);
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong budget = new AtomicLong();
+    private final AtomicInteger refreshing = new AtomicInteger();
+    // 最近回复耗时的 p95(毫秒), 0 表示样本不足
+    private volatile long p95;
+
+    /**
+     * @param fixedDelay 固定的对冲延迟(毫秒), 0 时使用最近回复耗时的 p95
+     * @param maxHedges  每次调用最多的对冲次数
+     */
+    RpcHedgePolicy(long fixedDelay, int maxHedges) {
+        this.fixedDelay = fixedDelay;
+        this.maxHedges = maxHedges;
+    }
+
+    int getMaxHedges() {
+        return this.maxHedges;
+    }
+
+    /**
+     * 对冲延迟(毫秒), 0 表示不对冲
+     */
+    long getDelay() {
+        return this.fixedDelay > 0 ? this.fixedDelay : this.p95;
+    }
+
+    /**
+     * 发送首次请求时存入一个令牌
+     */
+    void deposit() {
+        this.budget.updateAndGet(balance -> Math.min(BUDGET_CAP, balance + 1));
+    }
+
+    /**
+     * 发送对冲请求前消耗一个令牌, 没有令牌时不对冲
+     */
+    boolean withdraw() {
+        long balance;
+        do {
+            balance = this.budget.get();
+            if (balance <= 0) {
+                return false;
+            }
+        } while (!this.budget.compareAndSet(balance, balance - 1));
+        return true;
+    }
+
+    /**
+     * 记录一次回复耗时, 每 REFRESH_NUM 次重新计算 p95
+     */
+    void record(long nanos) {
+        final long count = this.sampleCount.getAndIncrement();
+        this.samples.set((int) (count % SAMPLE_NUM), nanos);
+        if ((count + 1) % REFRESH_NUM == 0 && this.refreshing.compareAndSet(0, 1)) {
+            try {
+                final int size = (int) Math.min(count + 1, SAMPLE_NUM);
+                final long[] sorted = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = this.samples.get(i);
+                }
+                Arrays.sort(sorted);
+                this.p95 = Math.max(1, TimeUnit.NANOSECONDS.toMillis(sorted[(int) Math.ceil(size * 0.95) - 1]));
+            } finally {
+                this.refreshing.set(0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package vip.toby.rpc.client;
+
+import org.springframework.amqp.core.AmqpReplyTimeoutException;
+import org.springframework.amqp.core.Message;
+import vip.toby.rpc.entity.RCode;
+import vip.toby.rpc.entity.RpcResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * RpcHedgeRace, 一次对冲调用中首次请求和对冲请求的竞争, 第一个正常的回复为准
+ * <p>
+ * 过载、重复调用等拒绝回复通常比正常结果先到, 还有其他请求未完成时忽略; 全部请求都失败或者被拒绝时以最后一个为准
+ *
+ * @author toby
+ */
+final class RpcHedgeRace {
+
+    private final RpcHedgePolicy hedgePolicy;
+    private final Predicate<Message> rejection;
+    private final CompletableFuture<Message> result = new CompletableFuture<>();
+    // 已发出还未失败或者被拒绝的请求数
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * @param rejection 是否为拒绝回复
+     */
+    RpcHedgeRace(RpcHedgePolicy hedgePolicy, Predicate<Message> rejection) {
+        this.hedgePolicy = hedgePolicy;
+        this.rejection = rejection;
+    }
+
+    /**
+     * 拒绝回复: 过载、熔断或者重复调用, 只读取状态码, 不解析 R.result
+     */
+    static boolean isRejection(RpcResult<?> rpcResult) {
+        return switch (rpcResult.getStatus()) {
+            case OVERLOADED, CIRCUIT_OPEN -> true;
+            case OK -> rpcResult.getCode() == RCode.DUPLICATE.getCode();
+            default -> false;
+        };
+    }
+
+    /**
+     * 竞争结果, 所有请求共用
+     */
+    CompletableFuture<Message> getResult() {
+        return this.result;
+    }
+
+    /**
+     * 发出一次请求, 首次请求超时即整体超时; 对冲请求赢得竞争时执行 onHedgeWon
+     *
+     * @param hedge 是否为对冲请求
+     */
+    void attempt(Supplier<CompletableFuture<Message>> send, boolean hedge, Runnable onHedgeWon) {
+        // 发送前计数, 避免其他请求先被拒绝时误以为没有未完成的请求
+        this.outstanding.incrementAndGet();
+        final long start = System.nanoTime();
+        send.get().whenComplete((resultObj, t) -> {
+            if (t == null && !this.rejection.test(resultObj)) {
+                this.hedgePolicy.record(System.nanoTime() - start);
+                if (this.result.complete(resultObj) && hedge) {
+                    onHedgeWon.run();
+                }
+                return;
+            }
+            if (t == null) {
+                if (this.outstanding.decrementAndGet() == 0) {
+                    this.result.complete(resultObj);
+                }
+                return;
+            }
+            final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (!hedge && cause instanceof AmqpReplyTimeoutException || this.outstanding.decrementAndGet() == 0) {
+                this.result.completeExceptionally(cause);
+            }
+        });
+    }
+
+}
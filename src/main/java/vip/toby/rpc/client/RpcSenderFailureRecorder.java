@@ -0,0 +1,111 @@
+package vip.toby.rpc.client;
+
+import com.rabbitmq.client.ShutdownSignalException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpAuthenticationException;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.AmqpResourceNotAvailableException;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RpcSenderFailureRecorder, 按异常类型记录发送失败, 所有 RpcClient 共用
+ * <p>
+ * 只记录, 不恢复也不重建, 依赖 Spring AMQP 自身的恢复机制: 关闭的通道由 CachingConnectionFactory 丢弃, Direct Reply-To 消费者在下次调用时重新创建,
+ * 断开的连接由 ConnectionFactory 自动重连; 发送组件(RabbitTemplate、AsyncRabbitTemplate)持有其他调用的等待状态, 不停止也不重建
+ *
+ * @author toby
+ */
+@Slf4j
+public final class RpcSenderFailureRecorder {
+
+    /**
+     * 异常类型
+     */
+    enum Failure {
+        CONNECTION, // 连接异常, 等待 ConnectionFactory 重连
+        CHANNEL, // 通道或者回复消费者异常, 只影响该通道上的调用
+        OTHER // 编解码、参数等异常, 与通道和连接无关
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 在共用的 ConnectionFactory 上只注册一次连接监听
+     */
+    RpcSenderFailureRecorder(ConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        if (meterRegistry != null) {
+            monitor(connectionFactory, meterRegistry);
+        }
+    }
+
+    /**
+     * 发送失败后调用, 只记录通道和连接异常, 不影响其他进行中的调用
+     */
+    void record(String rpcName, Throwable t) {
+        final Failure failure = classify(t);
+        if (failure == Failure.OTHER) {
+            return;
+        }
+        if (this.meterRegistry != null) {
+            Counter.builder("simple.rpc.client.sender.failures")
+                    .tag("rpcName", rpcName)
+                    .tag("type", failure.name().toLowerCase())
+                    .register(this.meterRegistry)
+                    .increment();
+        }
+        log.warn("{} failure, waiting for Spring AMQP recovery! RpcClient: {}, Cause: {}", failure, rpcName, t.toString());
+    }
+
+    /**
+     * 沿着 cause 链查找 AMQP 相关的异常
+     */
+    static Failure classify(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AmqpConnectException || cause instanceof AmqpAuthenticationException) {
+                return Failure.CONNECTION;
+            }
+            if (cause instanceof ShutdownSignalException shutdownSignalException) {
+                return shutdownSignalException.isHardError() ? Failure.CONNECTION : Failure.CHANNEL;
+            }
+            if (cause instanceof AmqpIOException || cause instanceof AmqpResourceNotAvailableException) {
+                return Failure.CHANNEL;
+            }
+        }
+        return Failure.OTHER;
+    }
+
+    /**
+     * 记录非主动关闭后的重连次数
+     */
+    private static void monitor(ConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
+        final Counter reconnectCounter = Counter.builder("simple.rpc.client.reconnects").register(meterRegistry);
+        final AtomicBoolean lost = new AtomicBoolean();
+        connectionFactory.addConnectionListener(new ConnectionListener() {
+
+            @Override
+            public void onCreate(Connection connection) {
+                if (lost.getAndSet(false)) {
+                    reconnectCounter.increment();
+                    log.info("Reconnected!");
+                }
+            }
+
+            @Override
+            public void onShutDown(ShutdownSignalException signal) {
+                if (!signal.isInitiatedByApplication()) {
+                    lost.set(true);
+                }
+            }
+
+        });
+    }
+
+}
@@ -0,0 +1,151 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+import org.apache.commons.lang3.StringUtils;
+import vip.toby.rpc.entity.*;
+
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * 基于 fastjson2 JSONWriter/JSONReader 的编解码, 直接读写 JavaBean, 不经过中间 JSONObject
+ * <p>
+ * 请求格式: {"command": command, "data": data}
+ * 回复格式: {"code": rpcStatus, "data": {"code": code, "msg": msg, "data": result, "det": detail}}
+ *
+ * @author toby
+ */
+public abstract class FastjsonRpcCodec implements RpcCodec {
+
+    protected abstract JSONWriter createWriter();
+
+    protected abstract JSONReader createReader(byte[] body);
+
+    /**
+     * 读取回复中的 R.result, 返回按类型解析的函数
+     */
+    protected abstract Function<Type, Object> readResult(JSONReader reader, byte[] body);
+
+    /**
+     * 读取请求中的 data, 无法确定类型时解析为 JSONObject
+     */
+    protected Object readData(JSONReader reader, Class<?> type) {
+        return reader.read(type == null ? JSONObject.class : type);
+    }
+
+    private static void writeName(JSONWriter writer, String name) {
+        writer.writeName(name);
+        // JSONB 不需要分隔符
+        if (!writer.jsonb) {
+            writer.writeColon();
+        }
+    }
+
+    @Override
+    public byte[] encodeRequest(String command, Object data) {
+        try (JSONWriter writer = createWriter()) {
+            writer.startObject();
+            writeName(writer, "command");
+            writer.writeString(command);
+            writeName(writer, "data");
+            writer.writeAny(data);
+            writer.endObject();
+            return writer.getBytes();
+        }
+    }
+
+    @Override
+    public RpcRequest decodeRequest(byte[] body, Function<String, Class<?>> dataType) {
+        try (JSONReader reader = createReader(body)) {
+            if (!reader.nextIfObjectStart()) {
+                return new RpcRequest(null, null);
+            }
+            String command = null;
+            Object data = null;
+            while (!reader.nextIfObjectEnd()) {
+                final String name = reader.readFieldName();
+                if ("command".equals(name)) {
+                    command = reader.readString();
+                } else if ("data".equals(name)) {
+                    final Class<?> type = command == null ? null : dataType.apply(command);
+                    data = readData(reader, type);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            return new RpcRequest(command, data);
+        }
+    }
+
+    @Override
+    public byte[] encodeReply(RpcStatus rpcStatus, R r) {
+        try (JSONWriter writer = createWriter()) {
+            writer.startObject();
+            writeName(writer, "code");
+            writer.writeInt32(rpcStatus.getCode());
+            if (r != null) {
+                writeName(writer, "data");
+                writer.startObject();
+                writeName(writer, "code");
+                writer.writeInt32(r.getCode());
+                writeName(writer, "msg");
+                writer.writeString(r.getMessage());
+                if (r.isOk()) {
+                    writeName(writer, "data");
+                    writer.writeAny(r.getResult());
+                } else if (r.getDetail() != null) {
+                    writeName(writer, "det");
+                    writer.writeAny(r.getDetail());
+                }
+                writer.endObject();
+            }
+            writer.endObject();
+            return writer.getBytes();
+        }
+    }
+
+    @Override
+    public <T> RpcResult<T> decodeReply(byte[] body, Type resultType) {
+        try (JSONReader reader = createReader(body)) {
+            RpcStatus rpcStatus = RpcStatus.FAIL;
+            R r = null;
+            Function<Type, Object> resultDecoder = null;
+            if (reader.nextIfObjectStart()) {
+                while (!reader.nextIfObjectEnd()) {
+                    final String name = reader.readFieldName();
+                    if ("code".equals(name)) {
+                        rpcStatus = RpcStatus.of(reader.readInt32());
+                    } else if ("data".equals(name) && reader.nextIfObjectStart()) {
+                        int code = RCode.FAIL.getCode();
+                        String message = null;
+                        Object detail = null;
+                        while (!reader.nextIfObjectEnd()) {
+                            final String field = reader.readFieldName();
+                            switch (field) {
+                                case "code" -> code = reader.readInt32Value();
+                                case "msg" -> message = reader.readString();
+                                case "det" -> detail = reader.readAny();
+                                case "data" -> resultDecoder = readResult(reader, body);
+                                case null, default -> reader.skipValue();
+                            }
+                        }
+                        if (StringUtils.isBlank(message)) {
+                            message = RCode.FAIL.getMessage();
+                        }
+                        r = R.build(ICode.build(code, message)).detail(detail);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            }
+            final RpcResult<T> rpcResult = RpcResult.build(rpcStatus);
+            if (rpcStatus != RpcStatus.OK || r == null) {
+                return rpcResult;
+            }
+            return rpcResult.result(r, resultType, resultDecoder == null ? type -> null : resultDecoder);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.util.TypeUtils;
+
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * fastjson2 JSON(UTF-8), 可读性好, 便于调试和跨语言
+ *
+ * @author toby
+ */
+public class JsonRpcCodec extends FastjsonRpcCodec {
+
+    @Override
+    public String getName() {
+        return JSON;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    protected JSONWriter createWriter() {
+        return JSONWriter.ofUTF8();
+    }
+
+    @Override
+    protected JSONReader createReader(byte[] body) {
+        return JSONReader.of(body);
+    }
+
+    /**
+     * 文本格式无法按位置截取, 先解析为通用对象, 访问时再转换类型
+     */
+    @Override
+    protected Function<Type, Object> readResult(JSONReader reader, byte[] body) {
+        final Object result = reader.readAny();
+        return type -> TypeUtils.cast(result, type);
+    }
+
+}
@@ -0,0 +1,53 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson2.JSONFactory;
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+
+/**
+ * fastjson2 JSONB + BeanToArray, JavaBean 按字段顺序编码为数组, 不写字段名
+ * <p>
+ * 体积最小, 但两端的 JavaBean 字段顺序必须一致, 并且需要声明 RpcResult&lt;T&gt; 才能解析为 JavaBean
+ *
+ * @author toby
+ */
+public class JsonbArrayRpcCodec extends JsonbRpcCodec {
+
+    @Override
+    public String getName() {
+        return JSONB_ARRAY;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/x-jsonb-array";
+    }
+
+    @Override
+    protected JSONWriter createWriter() {
+        return JSONWriter.ofJSONB(JSONWriter.Feature.BeanToArray);
+    }
+
+    @Override
+    protected JSONReader createReader(byte[] body) {
+        return JSONReader.ofJSONB(body, readContext());
+    }
+
+    @Override
+    protected JSONReader createReader(byte[] body, int offset, int length) {
+        return JSONReader.ofJSONB(body, offset, length, readContext());
+    }
+
+    /**
+     * 无法确定类型时 JavaBean 只能按数组读取
+     */
+    @Override
+    protected Object readData(JSONReader reader, Class<?> type) {
+        return type == null ? reader.readAny() : reader.read(type);
+    }
+
+    private static JSONReader.Context readContext() {
+        return JSONFactory.createReadContext(JSONFactory.getDefaultObjectReaderProvider(), JSONReader.Feature.SupportArrayToBean);
+    }
+
+}
@@ -0,0 +1,55 @@
+package vip.toby.rpc.codec;
+
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.JSONWriter;
+
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * fastjson2 JSONB, 默认编解码
+ *
+ * @author toby
+ */
+public class JsonbRpcCodec extends FastjsonRpcCodec {
+
+    @Override
+    public String getName() {
+        return JSONB;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/x-jsonb";
+    }
+
+    @Override
+    protected JSONWriter createWriter() {
+        return JSONWriter.ofJSONB();
+    }
+
+    @Override
+    protected JSONReader createReader(byte[] body) {
+        return JSONReader.ofJSONB(body);
+    }
+
+    protected JSONReader createReader(byte[] body, int offset, int length) {
+        return JSONReader.ofJSONB(body, offset, length);
+    }
+
+    /**
+     * 只记录 R.result 的位置, 首次访问时才解析
+     */
+    @Override
+    protected Function<Type, Object> readResult(JSONReader reader, byte[] body) {
+        final int offset = reader.getOffset();
+        reader.skipValue();
+        final int length = reader.getOffset() - offset;
+        return type -> {
+            try (JSONReader resultReader = createReader(body, offset, length)) {
+                return resultReader.read(type);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,187 @@
+package vip.toby.rpc.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.batch.BatchingStrategy;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+import org.springframework.amqp.listener.ListenerExecutionFailedException;
+import org.springframework.beans.BeanUtils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * ASYNC 批量发送, 按 exchange + routingKey 分别累积, 达到 batchSize 条或者 batchTimeout 毫秒后合并为一条消息
+ * <p>
+ * 每条记录依次写入 correlationId, content-encoding, body, 长度前缀为 int, null 时长度为 -1
+ * <p>
+ * 发送端由 BatchingRabbitTemplate 加锁调用, 接收端由 MessageListenerContainer 拆分后逐条调用 RpcServerHandler
+ *
+ * @author toby
+ */
+public class RpcBatchingStrategy implements BatchingStrategy {
+
+    /**
+     * 批量消息中的记录数
+     */
+    public final static String BATCH_SIZE = "x-rpc-batch-size";
+
+    private final int batchSize;
+    private final long batchTimeout;
+    // 保持插入顺序, 定时释放时按先后顺序发送
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+
+    /**
+     * 只用于接收端拆分
+     */
+    public RpcBatchingStrategy() {
+        this(0, 0);
+    }
+
+    public RpcBatchingStrategy(int batchSize, long batchTimeout) {
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+    }
+
+    @Override
+    public MessageBatch addToBatch(String exchange, String routingKey, Message message) {
+        final String key = exchange + "/" + routingKey;
+        final Batch batch = this.batches.computeIfAbsent(key, k -> new Batch(exchange, routingKey, System.currentTimeMillis() + this.batchTimeout));
+        batch.add(message);
+        if (batch.messages.size() < this.batchSize) {
+            return null;
+        }
+        this.batches.remove(key);
+        return batch.toMessageBatch();
+    }
+
+    @Override
+    public Date nextRelease() {
+        long nextRelease = Long.MAX_VALUE;
+        for (Batch batch : this.batches.values()) {
+            nextRelease = Math.min(nextRelease, batch.deadline);
+        }
+        return nextRelease == Long.MAX_VALUE ? null : new Date(nextRelease);
+    }
+
+    @Override
+    public Collection<MessageBatch> releaseBatches() {
+        if (this.batches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<MessageBatch> messageBatches = new ArrayList<>(this.batches.size());
+        for (Batch batch : this.batches.values()) {
+            messageBatches.add(batch.toMessageBatch());
+        }
+        this.batches.clear();
+        return messageBatches;
+    }
+
+    @Override
+    public boolean canDebatch(MessageProperties properties) {
+        return properties.getHeader(BATCH_SIZE) != null;
+    }
+
+    @Override
+    public void deBatch(Message message, Consumer<Message> fragmentConsumer) {
+        final ByteBuffer buffer = ByteBuffer.wrap(message.getBody());
+        final MessageProperties messageProperties = message.getMessageProperties();
+        final List<Message> fragments = new ArrayList<>();
+        try {
+            while (buffer.hasRemaining()) {
+                final String correlationId = readString(buffer);
+                final String contentEncoding = readString(buffer);
+                final byte[] body = new byte[buffer.getInt()];
+                buffer.get(body);
+                final MessageProperties fragmentProperties = new MessageProperties();
+                BeanUtils.copyProperties(messageProperties, fragmentProperties);
+                fragmentProperties.setCorrelationId(correlationId);
+                fragmentProperties.setContentEncoding(contentEncoding);
+                fragmentProperties.setContentLength(body.length);
+                fragments.add(new Message(body, fragmentProperties));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new ListenerExecutionFailedException("批量消息格式错误", e, message);
+        }
+        if (fragments.isEmpty()) {
+            return;
+        }
+        // 最后一条记录负责 Ack 整个批量消息
+        fragments.getLast().getMessageProperties().setLastInBatch(true);
+        fragments.forEach(fragmentConsumer);
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class Batch {
+
+        private final String exchange;
+        private final String routingKey;
+        private final long deadline;
+        private final List<Message> messages = new ArrayList<>();
+
+        private Batch(String exchange, String routingKey, long deadline) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.deadline = deadline;
+        }
+
+        private void add(Message message) {
+            this.messages.add(message);
+        }
+
+        private MessageBatch toMessageBatch() {
+            final int size = this.messages.size();
+            final byte[][] correlationIds = new byte[size][];
+            final byte[][] contentEncodings = new byte[size][];
+            int length = 0;
+            for (int i = 0; i < size; i++) {
+                final MessageProperties properties = this.messages.get(i).getMessageProperties();
+                correlationIds[i] = toBytes(properties.getCorrelationId());
+                contentEncodings[i] = toBytes(properties.getContentEncoding());
+                length += 12 + this.messages.get(i).getBody().length
+                        + (correlationIds[i] == null ? 0 : correlationIds[i].length)
+                        + (contentEncodings[i] == null ? 0 : contentEncodings[i].length);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            for (int i = 0; i < size; i++) {
+                writeString(buffer, correlationIds[i]);
+                writeString(buffer, contentEncodings[i]);
+                writeString(buffer, this.messages.get(i).getBody());
+            }
+            // 同一个客户端的 content-type 一致, 直接使用第一条
+            final MessageProperties first = this.messages.getFirst().getMessageProperties();
+            final MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setContentType(first.getContentType());
+            messageProperties.setDeliveryMode(first.getDeliveryMode());
+            messageProperties.setHeader(BATCH_SIZE, size);
+            return new MessageBatch(this.exchange, this.routingKey, new Message(buffer.array(), messageProperties));
+        }
+
+    }
+
+}
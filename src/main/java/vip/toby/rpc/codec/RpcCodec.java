@@ -0,0 +1,66 @@
+package vip.toby.rpc.codec;
+
+import vip.toby.rpc.entity.R;
+import vip.toby.rpc.entity.RpcRequest;
+import vip.toby.rpc.entity.RpcResult;
+import vip.toby.rpc.entity.RpcStatus;
+
+import java.lang.reflect.Type;
+import java.util.function.Function;
+
+/**
+ * 消息编解码, 通过 @RpcClient.codec / @RpcServer.codec 按名称选择
+ * <p>
+ * 自定义实现通过 META-INF/services/vip.toby.rpc.codec.RpcCodec 注册
+ *
+ * @author toby
+ */
+public interface RpcCodec {
+
+    String JSONB = "jsonb";
+    String JSON = "json";
+    String JSONB_ARRAY = "jsonb-array";
+
+    /**
+     * 名称, 全局唯一
+     */
+    String getName();
+
+    /**
+     * 写入消息的 content-type, 服务端据此选择解码方式, 全局唯一
+     */
+    String getContentType();
+
+    /**
+     * 编码请求
+     *
+     * @param command 方法
+     * @param data    JSONObject 或者添加 @RpcDTO 的 JavaBean
+     */
+    byte[] encodeRequest(String command, Object data);
+
+    /**
+     * 解码请求
+     *
+     * @param body     消息体
+     * @param dataType 根据 command 返回 data 的目标类型, 无法确定时返回 null
+     */
+    RpcRequest decodeRequest(byte[] body, Function<String, Class<?>> dataType);
+
+    /**
+     * 编码回复
+     *
+     * @param rpcStatus 调用状态
+     * @param r         操作结果, 可以为 null
+     */
+    byte[] encodeReply(RpcStatus rpcStatus, R r);
+
+    /**
+     * 解码回复
+     *
+     * @param body       消息体
+     * @param resultType R.result 的目标类型
+     */
+    <T> RpcResult<T> decodeReply(byte[] body, Type resultType);
+
+}
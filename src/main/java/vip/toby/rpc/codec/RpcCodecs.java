@@ -0,0 +1,65 @@
+package vip.toby.rpc.codec;
+
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * RpcCodec 注册表, 内置 jsonb / json / jsonb-array, 并加载 ServiceLoader 注册的实现
+ *
+ * @author toby
+ */
+public class RpcCodecs {
+
+    private final static Map<String, RpcCodec> NAME_MAP;
+    private final static Map<String, RpcCodec> CONTENT_TYPE_MAP;
+
+    static {
+        final Map<String, RpcCodec> nameMap = new HashMap<>();
+        final Map<String, RpcCodec> contentTypeMap = new HashMap<>();
+        final JsonbRpcCodec jsonbRpcCodec = new JsonbRpcCodec();
+        register(nameMap, contentTypeMap, jsonbRpcCodec);
+        register(nameMap, contentTypeMap, new JsonRpcCodec());
+        register(nameMap, contentTypeMap, new JsonbArrayRpcCodec());
+        for (RpcCodec rpcCodec : ServiceLoader.load(RpcCodec.class, RpcCodecs.class.getClassLoader())) {
+            register(nameMap, contentTypeMap, rpcCodec);
+        }
+        // 兼容旧版本, 旧版本固定使用 JSONB 并且 content-type 为 application/octet-stream
+        contentTypeMap.putIfAbsent(MessageProperties.CONTENT_TYPE_BYTES, jsonbRpcCodec);
+        NAME_MAP = Map.copyOf(nameMap);
+        CONTENT_TYPE_MAP = Map.copyOf(contentTypeMap);
+    }
+
+    private static void register(Map<String, RpcCodec> nameMap, Map<String, RpcCodec> contentTypeMap, RpcCodec rpcCodec) {
+        if (nameMap.putIfAbsent(rpcCodec.getName(), rpcCodec) != null) {
+            throw new RuntimeException("RpcCodec: " + rpcCodec.getName() + " 重复");
+        }
+        if (contentTypeMap.putIfAbsent(rpcCodec.getContentType(), rpcCodec) != null) {
+            throw new RuntimeException("RpcCodec ContentType: " + rpcCodec.getContentType() + " 重复");
+        }
+    }
+
+    /**
+     * 按名称获取, 不存在时直接报错
+     */
+    public static RpcCodec get(String name) {
+        final RpcCodec rpcCodec = NAME_MAP.get(name);
+        if (rpcCodec == null) {
+            throw new RuntimeException("RpcCodec: " + name + " 不存在");
+        }
+        return rpcCodec;
+    }
+
+    /**
+     * 按消息 content-type 获取, 无法识别时使用 defaultCodec
+     */
+    public static RpcCodec of(String contentType, RpcCodec defaultCodec) {
+        if (contentType == null) {
+            return defaultCodec;
+        }
+        return CONTENT_TYPE_MAP.getOrDefault(contentType, defaultCodec);
+    }
+
+}
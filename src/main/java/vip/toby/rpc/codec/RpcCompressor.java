@@ -0,0 +1,122 @@
+package vip.toby.rpc.codec;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 消息体压缩, 超过阈值时使用 Deflate 压缩, 并通过 content-encoding 标记
+ *
+ * @author toby
+ */
+public class RpcCompressor {
+
+    public final static String DEFLATE = "deflate";
+    /**
+     * 客户端声明可以解压的回复编码, 服务端据此决定是否压缩回复
+     */
+    public final static String ACCEPT_ENCODING = "x-rpc-accept-encoding";
+
+    private final int threshold;
+    private final int maxDecompressedSize;
+    // 未开启指标时为 null
+    private final Counter originalBytes;
+    private final Counter compressedBytes;
+    private final DistributionSummary ratio;
+    private final Timer compressTimer;
+    private final Timer decompressTimer;
+
+    /**
+     * @param rpcName             指标标签
+     * @param threshold           压缩阈值(字节), 小于等于 0 时不压缩, 但仍然可以解压
+     * @param maxDecompressedSize 解压后的最大字节数, 超过时直接失败
+     * @param meterRegistry       指标注册, 为 null 时不记录指标
+     */
+    public RpcCompressor(String rpcName, int threshold, int maxDecompressedSize, MeterRegistry meterRegistry) {
+        this.threshold = threshold;
+        this.maxDecompressedSize = maxDecompressedSize;
+        final boolean compressMetrics = meterRegistry != null && threshold > 0;
+        this.originalBytes = compressMetrics ? Counter.builder("simple.rpc.compression.original.bytes").tag("rpcName", rpcName).baseUnit("bytes").register(meterRegistry) : null;
+        this.compressedBytes = compressMetrics ? Counter.builder("simple.rpc.compression.compressed.bytes").tag("rpcName", rpcName).baseUnit("bytes").register(meterRegistry) : null;
+        this.ratio = compressMetrics ? DistributionSummary.builder("simple.rpc.compression.ratio").tag("rpcName", rpcName).register(meterRegistry) : null;
+        this.compressTimer = compressMetrics ? Timer.builder("simple.rpc.compression.time").tag("rpcName", rpcName).tag("operation", "compress").register(meterRegistry) : null;
+        this.decompressTimer = meterRegistry != null ? Timer.builder("simple.rpc.compression.time").tag("rpcName", rpcName).tag("operation", "decompress").register(meterRegistry) : null;
+    }
+
+    public boolean isEnabled() {
+        return this.threshold > 0;
+    }
+
+    /**
+     * 超过阈值时压缩, 未开启、未超过阈值或者压缩后没有变小时返回 null
+     */
+    public byte[] compress(byte[] body) {
+        if (!isEnabled() || body.length < this.threshold) {
+            return null;
+        }
+        final long start = System.nanoTime();
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            final byte[] compressed = out.toByteArray();
+            if (this.compressTimer != null) {
+                this.compressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                this.originalBytes.increment(body.length);
+                this.compressedBytes.increment(compressed.length);
+                this.ratio.record((double) compressed.length / body.length);
+            }
+            return compressed.length < body.length ? compressed : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 根据 content-encoding 解压, 未压缩时直接返回原消息体
+     */
+    public byte[] decompress(byte[] body, String contentEncoding) {
+        if (!DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            return body;
+        }
+        final long start = System.nanoTime();
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min((long) body.length * 4, this.maxDecompressedSize));
+            final byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                final int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new RuntimeException("消息体解压失败, 数据不完整");
+                }
+                // 先检查再写入, 避免压缩炸弹耗尽内存
+                if (out.size() + length > this.maxDecompressedSize) {
+                    throw new RuntimeException("消息体解压后超过 " + this.maxDecompressedSize + " 字节, 已拒绝");
+                }
+                out.write(buffer, 0, length);
+            }
+            if (this.decompressTimer != null) {
+                this.decompressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new RuntimeException("消息体解压失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -102,6 +102,13 @@ public class R {
         return null;
     }
 
+    /**
+     * 原始 result, 不做默认值处理
+     */
+    Object peekResult() {
+        return this.result;
+    }
+
     @JSONField(serialize = false)
     public Object getDetail() {
         if (!this.isOk()) {
@@ -0,0 +1,14 @@
+package vip.toby.rpc.entity;
+
+/**
+ * 熔断状态
+ *
+ * @author toby
+ */
+public enum RpcCircuitState {
+
+    CLOSED, // 正常调用
+    OPEN, // 已熔断, 直接返回 CIRCUIT_OPEN
+    HALF_OPEN // 半开, 只允许少量试探调用
+
+}
@@ -0,0 +1,14 @@
+package vip.toby.rpc.entity;
+
+/**
+ * 发布确认窗口已满时的处理方式
+ *
+ * @author toby
+ */
+public enum RpcConfirmMode {
+
+    BLOCK, // 阻塞等待, 超过 replyTimeout 后抛出异常
+    FAIL_FAST, // 直接抛出异常
+    SHED // 直接丢弃
+
+}
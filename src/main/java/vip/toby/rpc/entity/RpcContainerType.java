@@ -0,0 +1,13 @@
+package vip.toby.rpc.entity;
+
+/**
+ * 消费容器类型
+ *
+ * @author toby
+ */
+public enum RpcContainerType {
+
+    SIMPLE, // SimpleMessageListenerContainer, 消息经由内部队列交给消费线程处理, 支持按批消费和自动扩容
+    DIRECT // DirectMessageListenerContainer, 直接在 RabbitMQ 客户端线程中处理, 减少一次线程切换
+
+}
@@ -0,0 +1,46 @@
+package vip.toby.rpc.entity;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Getter;
+
+/**
+ * RPC 请求
+ *
+ * @author toby
+ */
+@Getter
+public class RpcRequest {
+
+    /**
+     * 请求的截止时间(毫秒时间戳), 超过后服务端不再处理
+     */
+    public final static String DEADLINE = "x-rpc-deadline";
+
+    /**
+     * 请求的发送时间(毫秒时间戳), 服务端用于计算排队时间
+     */
+    public final static String TIMESTAMP = "x-rpc-timestamp";
+
+    /**
+     * 对冲请求携带首次请求的 correlationId, 服务端参数去重时不按重复调用拒绝
+     */
+    public final static String HEDGE = "x-rpc-hedge";
+
+    private final String command;
+    // JSONObject 或者添加 @RpcDTO 的 JavaBean
+    private final Object data;
+
+    public RpcRequest(String command, Object data) {
+        this.command = command;
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        final JSONObject json = new JSONObject();
+        json.put("command", this.command);
+        json.put("data", this.data);
+        return json.toJSONString();
+    }
+
+}
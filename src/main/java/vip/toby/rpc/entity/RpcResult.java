@@ -4,32 +4,63 @@ import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
 import com.alibaba.fastjson2.annotation.JSONField;
 
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
 
 /**
  * RpcResult
  *
  * @author toby
  */
-public class RpcResult {
+public class RpcResult<T> {
+
+    // resolve(Class) 在整体解析后的返回值
+    private final static Object UNRESOLVED = new Object();
 
     private final RpcStatus status;
     private R result;
+    // 声明的返回类型, 未声明时为 Object
+    private Type resultType = Object.class;
+    // 延迟解析 R.result, 首次访问时才按 resultType 解析
+    private volatile Function<Type, Object> resultDecoder;
+    // 整体解析前按 getResult(Class) 的类型解析的结果, 只在 resolve 的锁内访问
+    private Map<Type, Object> typedResults;
 
     private RpcResult(RpcStatus status, R result) {
         this.status = status;
         this.result = result;
     }
 
-    public static RpcResult build(RpcStatus status) {
-        return new RpcResult(status, null);
+    public static <T> RpcResult<T> build(RpcStatus status) {
+        return new RpcResult<>(status, null);
+    }
+
+    public RpcResult<T> result(R result) {
+        this.result = result;
+        this.resultDecoder = null;
+        this.typedResults = null;
+        return this;
     }
 
-    public RpcResult result(R result) {
+    /**
+     * 设置 R, 其中 R.result 在首次访问时通过 resultDecoder 按 resultType 解析
+     */
+    public RpcResult<T> result(R result, Type resultType, Function<Type, Object> resultDecoder) {
         this.result = result;
+        this.resultType = resultType == null ? Object.class : resultType;
+        this.resultDecoder = resultDecoder;
+        this.typedResults = null;
         return this;
     }
 
+    @JSONField(serialize = false)
+    public RpcStatus getStatus() {
+        return this.status;
+    }
+
     @JSONField(serialize = false)
     public int getStatusCode() {
         return this.status.getCode();
@@ -37,6 +68,9 @@ public class RpcResult {
 
     @JSONField(serialize = false)
     public R getR() {
+        if (this.resultDecoder != null) {
+            resolve();
+        }
         return this.result;
     }
 
@@ -61,10 +95,16 @@ public class RpcResult {
         return this.status.getMessage();
     }
 
+    @SuppressWarnings("unchecked")
     @JSONField(serialize = false)
-    public Object getResult() {
+    public T getResult() {
         if (isOk()) {
-            return Objects.requireNonNullElseGet(this.result, R::fail).getResult();
+            final R r = Objects.requireNonNullElseGet(getR(), R::fail);
+            if (this.resultType != Object.class && r.isOk()) {
+                // 声明了返回类型时, 不使用默认的空 JSONObject
+                return (T) r.peekResult();
+            }
+            return (T) r.getResult();
         }
         return null;
     }
@@ -77,8 +117,16 @@ public class RpcResult {
         return null;
     }
 
+    @SuppressWarnings("unchecked")
     @JSONField(serialize = false)
-    public <T> T getResult(Class<T> clazz) {
+    public <C> C getResult(Class<C> clazz) {
+        if (this.resultDecoder != null && isOk() && this.result.isOk()) {
+            // 尚未解析时, 直接解析为目标类型, 同一类型只解析一次
+            final Object typedResult = resolve(clazz);
+            if (typedResult != UNRESOLVED) {
+                return (C) typedResult;
+            }
+        }
         return JSON.to(clazz, getResult());
     }
 
@@ -100,12 +148,43 @@ public class RpcResult {
         return defaultValue;
     }
 
+    private synchronized void resolve() {
+        final Function<Type, Object> resultDecoder = this.resultDecoder;
+        if (resultDecoder != null) {
+            // 已按声明类型解析过时直接复用
+            final Object typedResult = this.typedResults == null ? null : this.typedResults.get(this.resultType);
+            this.result.result(typedResult != null ? typedResult : resultDecoder.apply(this.resultType));
+            this.resultDecoder = null;
+            this.typedResults = null;
+        }
+    }
+
+    /**
+     * 按指定类型解析并缓存, 已经完成整体解析时返回 UNRESOLVED
+     */
+    private synchronized Object resolve(Class<?> clazz) {
+        final Function<Type, Object> resultDecoder = this.resultDecoder;
+        if (resultDecoder == null) {
+            return UNRESOLVED;
+        }
+        if (this.typedResults == null) {
+            this.typedResults = new HashMap<>(2);
+        }
+        Object typedResult = this.typedResults.get(clazz);
+        if (typedResult == null) {
+            typedResult = resultDecoder.apply(clazz);
+            this.typedResults.put(clazz, typedResult);
+        }
+        return typedResult;
+    }
+
     @Override
     public String toString() {
         final JSONObject result = new JSONObject();
         result.put("status", this.status.toJSON());
-        if (this.result != null) {
-            result.put("result", this.result.toJSON());
+        final R r = getR();
+        if (r != null) {
+            result.put("result", r.toJSON());
         }
         return result.toJSONString();
     }
@@ -14,7 +14,9 @@ public enum RpcStatus {
     OK(200, "ok"), // 成功
     FAIL(500, "fail"), // 失败
     NOT_FOUND(404, "service not found"), // 不存在
-    UNAVAILABLE(504, "service unavailable"); // 超时, 服务不可用
+    UNAVAILABLE(504, "service unavailable"), // 超时, 服务不可用
+    OVERLOADED(503, "service overloaded"), // 服务过载, 已拒绝
+    CIRCUIT_OPEN(502, "circuit breaker open"); // 客户端已熔断, 未发送请求
 
     private final int code;
     private final String message;
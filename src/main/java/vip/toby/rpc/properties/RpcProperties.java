@@ -1,9 +1,13 @@
 package vip.toby.rpc.properties;
 
+import lombok.Getter;
 import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import vip.toby.rpc.entity.RpcContainerType;
+
+import java.util.Map;
 
 /**
  * RpcProperties
@@ -21,6 +25,26 @@ public class RpcProperties {
 
     private String validatorFailFast;
 
+    private Integer compressThreshold;
+
+    private Boolean compressRequests;
+
+    private Integer maxDecompressedSize;
+
+    private Boolean metricsEnabled;
+
+    private Long maxClockSkew;
+
+    /**
+     * 服务端访问日志
+     */
+    private AccessLog accessLog;
+
+    /**
+     * 按服务覆盖 @RpcServer 的消费配置, key 为 rpcName(例如 [order.sync]) 或者 @RpcServer.name
+     */
+    private Map<String, Server> servers;
+
     public double getClientSlowCallTimePercent() {
         if (this.clientSlowCallTimePercent == null || this.clientSlowCallTimePercent <= 0.0 || this.clientSlowCallTimePercent >= 1.0) {
             return 0.6;
@@ -42,4 +66,147 @@ public class RpcProperties {
         return validatorFailFast;
     }
 
+    /**
+     * 获取服务的消费配置, 优先使用 rpcName, 其次使用 @RpcServer.name, 未配置时返回空配置
+     */
+    public Server getServer(String rpcName, String name) {
+        if (this.servers == null) {
+            return new Server();
+        }
+        Server server = this.servers.get(rpcName);
+        if (server == null) {
+            server = this.servers.get(name);
+        }
+        return server == null ? new Server() : server;
+    }
+
+    /**
+     * 消息体压缩阈值(字节), 默认不压缩
+     */
+    public int getCompressThreshold() {
+        if (this.compressThreshold == null || this.compressThreshold <= 0) {
+            return 0;
+        }
+        return this.compressThreshold;
+    }
+
+    /**
+     * 客户端是否压缩请求, 默认关闭, 所有服务端都升级到支持解压的版本后再开启
+     */
+    public boolean isCompressRequests() {
+        return this.compressRequests != null && this.compressRequests;
+    }
+
+    /**
+     * 解压后消息体的最大字节数, 默认 64MB
+     */
+    public int getMaxDecompressedSize() {
+        if (this.maxDecompressedSize == null || this.maxDecompressedSize <= 0) {
+            return 64 * 1024 * 1024;
+        }
+        return this.maxDecompressedSize;
+    }
+
+    /**
+     * 是否记录调用指标, 默认开启
+     */
+    public boolean isMetricsEnabled() {
+        return this.metricsEnabled == null || this.metricsEnabled;
+    }
+
+    /**
+     * 客户端和服务端时钟的最大偏差(毫秒), 比较客户端生成的时间戳时作为容差, 默认 1000
+     */
+    public long getMaxClockSkew() {
+        if (this.maxClockSkew == null || this.maxClockSkew < 0) {
+            return 1000;
+        }
+        return this.maxClockSkew;
+    }
+
+    public AccessLog getAccessLog() {
+        return this.accessLog == null ? new AccessLog() : this.accessLog;
+    }
+
+    /**
+     * 消费配置, 为 null 时使用 @RpcServer 中的配置
+     */
+    @Getter
+    @Setter
+    public static class Server {
+
+        private Integer prefetch;
+
+        private Integer batchSize;
+
+        private Boolean consumerBatchEnabled;
+
+        private Long receiveTimeout;
+
+        private Integer maxConcurrentConsumers;
+
+        private RpcContainerType containerType;
+
+        private Boolean autoscale;
+
+        private Integer autoscaleInterval;
+
+    }
+
+    /**
+     * 服务端访问日志配置
+     */
+    @Setter
+    public static class AccessLog {
+
+        private Double sampleRate;
+
+        private Long slowThreshold;
+
+        private Integer maxPayloadLength;
+
+        private Integer queueCapacity;
+
+        /**
+         * 采样比例, 0 ~ 1, 默认 1 全部记录, 慢调用不受影响
+         */
+        public double getSampleRate() {
+            if (this.sampleRate == null || this.sampleRate > 1.0) {
+                return 1.0;
+            }
+            return Math.max(this.sampleRate, 0.0);
+        }
+
+        /**
+         * 慢调用阈值(毫秒), 超过时总是记录, 默认 0 只按 serverSlowCallTimePercent * xMessageTTL 判断
+         */
+        public long getSlowThreshold() {
+            if (this.slowThreshold == null || this.slowThreshold <= 0) {
+                return 0;
+            }
+            return this.slowThreshold;
+        }
+
+        /**
+         * 参数最大输出长度(字符), 默认 1024
+         */
+        public int getMaxPayloadLength() {
+            if (this.maxPayloadLength == null || this.maxPayloadLength <= 0) {
+                return 1024;
+            }
+            return this.maxPayloadLength;
+        }
+
+        /**
+         * 待输出日志的队列长度, 默认 8192
+         */
+        public int getQueueCapacity() {
+            if (this.queueCapacity == null || this.queueCapacity <= 0) {
+                return 8192;
+            }
+            return this.queueCapacity;
+        }
+
+    }
+
 }
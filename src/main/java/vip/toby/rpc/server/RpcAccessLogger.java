@@ -0,0 +1,218 @@
+package vip.toby.rpc.server;
+
+import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import vip.toby.rpc.entity.RpcRequest;
+import vip.toby.rpc.properties.RpcProperties;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcAccessLogger, 服务端访问日志
+ * <p>
+ * 按比例采样, 慢调用总是记录; 消费线程只把记录放入有界队列, 由后台线程渲染输出, 队列已满时直接丢弃
+ * <p>
+ * 沿用 RpcServerHandler 的 Logger 名称, 已有的日志配置继续生效
+ *
+ * @author toby
+ */
+@Slf4j(topic = "vip.toby.rpc.server.RpcServerHandler")
+public class RpcAccessLogger implements DisposableBean {
+
+    private final double sampleRate;
+    private final long slowThreshold;
+    private final int maxPayloadLength;
+    private final BlockingQueue<AccessRecord> queue;
+    // 未开启指标时为 null
+    private final Counter droppedCounter;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    RpcAccessLogger(RpcProperties.AccessLog accessLog, MeterRegistry meterRegistry) {
+        this.sampleRate = accessLog.getSampleRate();
+        this.slowThreshold = accessLog.getSlowThreshold();
+        this.maxPayloadLength = accessLog.getMaxPayloadLength();
+        this.queue = new ArrayBlockingQueue<>(accessLog.getQueueCapacity());
+        this.droppedCounter = meterRegistry != null ? Counter.builder("simple.rpc.server.access.log.dropped").register(meterRegistry) : null;
+        this.worker = Thread.ofPlatform().daemon().name("RpcAccessLogger").start(this::drain);
+    }
+
+    /**
+     * 记录一次调用, xMessageTTL 大于 0 时按 slowCallTimePercent 判断慢调用
+     */
+    void log(String rpcName, String command, Object received, long duration, int xMessageTTL, double slowCallTimePercent) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        final boolean slow = (xMessageTTL > 0 && duration > Math.floor(slowCallTimePercent * xMessageTTL)) || (this.slowThreshold > 0 && duration >= this.slowThreshold);
+        if (!slow && (this.sampleRate <= 0 || (this.sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= this.sampleRate))) {
+            return;
+        }
+        // 只保存引用, 不在消费线程中渲染
+        if (!this.queue.offer(new AccessRecord(rpcName, command, received, duration, slow)) && this.droppedCounter != null) {
+            this.droppedCounter.increment();
+        }
+    }
+
+    private void drain() {
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                final AccessRecord record = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    emit(record);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void emit(AccessRecord record) {
+        log.atInfo()
+                .setMessage(record.slow() ? "Call Slowing! Duration: {}ms, RpcServer: {}, Method: {}, Received: {}" : "Duration: {}ms, RpcServer: {}, Method: {}, Received: {}")
+                .addArgument(record.duration())
+                .addArgument(record.rpcName())
+                .addArgument(record.command())
+                .addArgument(payload(record.received(), this.maxPayloadLength))
+                .addKeyValue("rpcName", record.rpcName())
+                .addKeyValue("command", record.command())
+                .addKeyValue("duration", record.duration())
+                .addKeyValue("slow", record.slow())
+                .log();
+    }
+
+    /**
+     * 日志参数, 只有真正输出时才渲染, 渲染超过 maxLength 个字符时停止并截断
+     */
+    static Object payload(Object payload, int maxLength) {
+        if (payload == null) {
+            return null;
+        }
+        return new Object() {
+            @Override
+            public String toString() {
+                if (maxLength <= 0) {
+                    return payload.toString();
+                }
+                final StringBuilder text = new StringBuilder(Math.min(maxLength, 1024) + 16);
+                if (!render(payload, text, maxLength)) {
+                    text.setLength(maxLength);
+                    text.append("...(truncated)");
+                }
+                return text.toString();
+            }
+        };
+    }
+
+    /**
+     * 按 JSON 格式逐层渲染, 超过 maxLength 个字符时返回 false, 不再渲染剩余部分
+     */
+    private static boolean render(Object value, StringBuilder text, int maxLength) {
+        if (text.length() > maxLength) {
+            return false;
+        }
+        switch (value) {
+            case null -> text.append("null");
+            case RpcRequest rpcRequest -> {
+                text.append("{\"command\":");
+                if (!render(rpcRequest.getCommand(), text, maxLength)) {
+                    return false;
+                }
+                text.append(",\"data\":");
+                if (!render(rpcRequest.getData(), text, maxLength)) {
+                    return false;
+                }
+                text.append('}');
+            }
+            // 长字符串只转义需要的部分
+            case CharSequence chars -> text.append(JSON.toJSONString(chars.length() > maxLength ? chars.subSequence(0, maxLength + 1).toString() : chars.toString()));
+            case Number number -> text.append(JSON.toJSONString(number));
+            case Boolean bool -> text.append(bool);
+            case Map<?, ?> map -> {
+                text.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    // 与 JSON 序列化一致, 不输出 null 值
+                    if (entry.getValue() == null) {
+                        continue;
+                    }
+                    if (!first) {
+                        text.append(',');
+                    }
+                    first = false;
+                    if (!render(String.valueOf(entry.getKey()), text, maxLength)) {
+                        return false;
+                    }
+                    text.append(':');
+                    if (!render(entry.getValue(), text, maxLength)) {
+                        return false;
+                    }
+                }
+                text.append('}');
+            }
+            case Collection<?> collection -> {
+                text.append('[');
+                boolean first = true;
+                for (Object element : collection) {
+                    if (!first) {
+                        text.append(',');
+                    }
+                    first = false;
+                    if (!render(element, text, maxLength)) {
+                        return false;
+                    }
+                }
+                text.append(']');
+            }
+            default -> {
+                if (value.getClass().isArray()) {
+                    text.append('[');
+                    final int length = Array.getLength(value);
+                    for (int i = 0; i < length; i++) {
+                        if (i > 0) {
+                            text.append(',');
+                        }
+                        if (!render(Array.get(value, i), text, maxLength)) {
+                            return false;
+                        }
+                    }
+                    text.append(']');
+                    break;
+                }
+                // JavaBean 转为 JSONObject 后逐层渲染, 其他类型直接序列化
+                final Object json = JSON.toJSON(value);
+                if (json instanceof Map<?, ?> || json instanceof Collection<?>) {
+                    return render(json, text, maxLength);
+                }
+                text.append(JSON.toJSONString(value));
+            }
+        }
+        return text.length() <= maxLength;
+    }
+
+    int getMaxPayloadLength() {
+        return this.maxPayloadLength;
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        this.running = false;
+        this.worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private record AccessRecord(String rpcName, String command, Object received, long duration, boolean slow) {
+    }
+
+}
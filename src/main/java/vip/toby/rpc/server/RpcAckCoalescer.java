@@ -0,0 +1,162 @@
+package vip.toby.rpc.server;
+
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcAckCoalescer, ASYNC 消费合并 Ack
+ * <p>
+ * 按 Channel 记录已处理完成的 deliveryTag, 每 ackBatchSize 条或者每 ackBatchTimeout 毫秒,
+ * 对最大的连续完成 deliveryTag 使用 multiple=true 一次 Ack, 未处理完成的消息不会被 Ack
+ * <p>
+ * 连续段长时间不前进时(例如消息在进入 RpcServerHandler 之前失败), 之后已完成的消息逐条 Ack, 避免一直占用 prefetch
+ *
+ * @author toby
+ */
+@Slf4j
+public class RpcAckCoalescer implements DisposableBean {
+
+    // 连续段超过 ackBatchTimeout 的倍数仍未前进时, 逐条 Ack 之后已完成的消息
+    private final static int STALL_FACTOR = 10;
+    // 连续段超过该长度时压缩 BitSet
+    private final static int COMPACT_THRESHOLD = 4096;
+
+    private final String rpcName;
+    private final int ackBatchSize;
+    private final long ackBatchTimeout;
+    private final Map<Channel, ChannelAcks> channelAcks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile boolean stopped;
+
+    RpcAckCoalescer(String rpcName, int ackBatchSize, int ackBatchTimeout) {
+        this.rpcName = rpcName;
+        this.ackBatchSize = ackBatchSize;
+        this.ackBatchTimeout = ackBatchTimeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("RpcAckCoalescer-" + rpcName).factory());
+        this.scheduler.scheduleWithFixedDelay(this::flushAll, ackBatchTimeout, ackBatchTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 消息处理完成
+     */
+    void complete(Channel channel, long deliveryTag) {
+        final ChannelAcks acks = this.channelAcks.computeIfAbsent(channel, ChannelAcks::new);
+        synchronized (acks) {
+            acks.complete(deliveryTag);
+            if (this.stopped || acks.pending >= this.ackBatchSize) {
+                flush(acks, this.stopped);
+            }
+        }
+    }
+
+    private void flushAll() {
+        final long now = System.currentTimeMillis();
+        for (ChannelAcks acks : this.channelAcks.values()) {
+            if (!acks.channel.isOpen()) {
+                // Channel 关闭后未 Ack 的消息会重投, 无需处理
+                this.channelAcks.remove(acks.channel);
+                continue;
+            }
+            synchronized (acks) {
+                flush(acks, now - acks.lastAdvance > STALL_FACTOR * this.ackBatchTimeout);
+            }
+        }
+    }
+
+    private void flush(ChannelAcks acks, boolean stalled) {
+        try {
+            acks.flush(stalled);
+        } catch (Exception e) {
+            this.channelAcks.remove(acks.channel);
+            log.error("RpcServer: {} Ack Exception!", this.rpcName);
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 停止时 Ack 所有已完成的消息, 之后完成的消息直接 Ack
+     */
+    @Override
+    public void destroy() {
+        this.stopped = true;
+        this.scheduler.shutdown();
+        for (ChannelAcks acks : this.channelAcks.values()) {
+            synchronized (acks) {
+                flush(acks, true);
+            }
+        }
+    }
+
+    private static final class ChannelAcks {
+
+        private final Channel channel;
+        // 下标为 deliveryTag - origin
+        private BitSet completed = new BitSet();
+        // 已逐条 Ack 的消息
+        private BitSet acked = new BitSet();
+        // 下标 0 对应的 deliveryTag, deliveryTag 在每个 Channel 上从 1 开始
+        private long origin = 1;
+        // 连续完成的数量, origin + contiguous 之前的消息都已完成
+        private int contiguous;
+        // 已经通过 multiple=true Ack 的最大 deliveryTag
+        private long ackedTag;
+        // 上次 Ack 后完成的数量
+        private int pending;
+        private long lastAdvance = System.currentTimeMillis();
+
+        private ChannelAcks(Channel channel) {
+            this.channel = channel;
+        }
+
+        private void complete(long deliveryTag) {
+            final long index = deliveryTag - this.origin;
+            if (index < 0 || index > Integer.MAX_VALUE) {
+                return;
+            }
+            this.completed.set((int) index);
+            this.pending++;
+            final int contiguous = this.completed.nextClearBit(this.contiguous);
+            if (contiguous != this.contiguous) {
+                this.contiguous = contiguous;
+                this.lastAdvance = System.currentTimeMillis();
+            }
+        }
+
+        private void flush(boolean stalled) throws Exception {
+            this.pending = 0;
+            final long top = this.origin + this.contiguous - 1;
+            if (top > this.ackedTag) {
+                // 跳过已逐条 Ack 的消息, 重复 Ack 同一个 deliveryTag 会导致 Channel 关闭
+                final int last = this.acked.previousClearBit(this.contiguous - 1);
+                if (last >= 0 && this.origin + last > this.ackedTag) {
+                    this.channel.basicAck(this.origin + last, true);
+                }
+                this.ackedTag = top;
+            }
+            if (stalled) {
+                for (int i = this.completed.nextSetBit(this.contiguous); i >= 0; i = this.completed.nextSetBit(i + 1)) {
+                    if (!this.acked.get(i)) {
+                        this.channel.basicAck(this.origin + i, false);
+                        this.acked.set(i);
+                    }
+                }
+            }
+            if (this.contiguous > COMPACT_THRESHOLD) {
+                this.completed = this.completed.get(this.contiguous, Math.max(this.contiguous, this.completed.length()));
+                this.acked = this.acked.get(this.contiguous, Math.max(this.contiguous, this.acked.length()));
+                this.origin += this.contiguous;
+                this.contiguous = 0;
+            }
+        }
+
+    }
+
+}
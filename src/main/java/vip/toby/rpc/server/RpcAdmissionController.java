@@ -0,0 +1,79 @@
+package vip.toby.rpc.server;
+
+/**
+ * RpcAdmissionController, SYNC 服务的自适应过载保护
+ * <p>
+ * 参考 CoDel: 排队时间持续 interval 都高于 target 时判定为过载, 过载期间拒绝排队时间超过 target 的请求;
+ * 另外按最近的处理耗时估算, 截止时间前无法完成的请求也直接拒绝
+ * <p>
+ * 排队时间优先使用 Broker 的入队时间; 只有客户端发送时间时, 减去 clockSkew 后再比较
+ * <p>
+ * 统计值只用于判断, 并发更新时允许少量误差
+ *
+ * @author toby
+ */
+final class RpcAdmissionController {
+
+    /**
+     * Broker 的入队时间(毫秒时间戳), 需要开启 rabbitmq_message_timestamp 插件
+     */
+    final static String BROKER_TIMESTAMP = "timestamp_in_ms";
+
+    // 处理耗时的 EWMA 权重
+    private final static double ALPHA = 0.2;
+
+    private final long target;
+    private final long interval;
+    private final long clockSkew;
+    // 最近一次排队时间不超过 target 的时间
+    private volatile long belowTargetAt = System.currentTimeMillis();
+    // 最近一次处理完成或者拒绝的时间
+    private volatile long doneAt = System.currentTimeMillis();
+    // 平均处理耗时(毫秒)
+    private volatile double latency;
+
+    /**
+     * @param clockSkew 客户端和服务端时钟的最大偏差(毫秒), 使用客户端时间戳时作为容差
+     */
+    RpcAdmissionController(long target, long interval, long clockSkew) {
+        this.target = target;
+        this.interval = interval;
+        this.clockSkew = clockSkew;
+    }
+
+    /**
+     * 是否接受请求
+     *
+     * @param enqueuedAt  入队时间, 0 时不计算排队时间
+     * @param brokerClock 入队时间是否为 Broker 时钟, 否则为客户端发送时间, 排队时间需要减去时钟偏差
+     * @param deadline    截止时间(客户端时钟), 0 时不检查
+     * @param inFlight    其他正在处理的请求数
+     */
+    boolean admit(long enqueuedAt, boolean brokerClock, long deadline, int inFlight) {
+        final long now = System.currentTimeMillis();
+        final long sojourn = enqueuedAt > 0 ? Math.max(0, now - enqueuedAt - (brokerClock ? 0 : this.clockSkew)) : 0;
+        // 没有处理中的请求并且空闲超过 target 说明队列已经排空, 不依赖时钟, 保证时钟偏差过大时也能退出过载
+        if (sojourn <= this.target || (inFlight == 0 && now - this.doneAt > this.target)) {
+            this.belowTargetAt = now;
+        } else if (now - this.belowTargetAt > this.interval) {
+            // 过载, 队列一直没有排空
+            this.doneAt = now;
+            return false;
+        }
+        if (deadline > 0 && now + this.latency > deadline + this.clockSkew) {
+            this.doneAt = now;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录一次处理耗时
+     */
+    void record(long nanos) {
+        final double latency = this.latency;
+        this.latency = latency + ALPHA * (nanos / 1_000_000.0 - latency);
+        this.doneAt = System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,157 @@
+package vip.toby.rpc.server;
+
+import com.alibaba.fastjson2.JSONWriter;
+import vip.toby.rpc.entity.R;
+import vip.toby.rpc.util.RpcHash;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * RpcDeduplicationInterceptor, 内置的内存去重实现
+ * <p>
+ * 按 [消息 ID] 和 [参数] 的 64 位指纹去重, 参数指纹为 JSONB 编码后的 XXH64; 记录首次调用的结果, SYNC 重复调用时直接返回
+ * <p>
+ * 只在当前实例内去重, 多实例部署时同一条消息可能被不同实例各执行一次
+ *
+ * @author toby
+ */
+public class RpcDeduplicationInterceptor implements RpcServerHandlerInterceptor {
+
+    private final RpcDeduplicationTable correlationIds;
+    private final RpcDeduplicationTable payloads;
+    // 同一线程内 duplicateHandle 和 afterHandle 共用参数指纹, 避免重复编码
+    private final ThreadLocal<Fingerprint> fingerprints = ThreadLocal.withInitial(Fingerprint::new);
+
+    /**
+     * 默认每种记录最多 65536 条, 保留 10 分钟
+     */
+    public RpcDeduplicationInterceptor() {
+        this(65536, 600000);
+    }
+
+    /**
+     * @param maxSize 每种记录的最大数量, 内存占用固定
+     * @param ttl     记录保留时间(毫秒)
+     */
+    public RpcDeduplicationInterceptor(int maxSize, long ttl) {
+        if (maxSize <= 0 || ttl <= 0) {
+            throw new RuntimeException("maxSize 和 ttl 必须大于 0");
+        }
+        final int stripeNum = Runtime.getRuntime().availableProcessors() * 4;
+        this.correlationIds = new RpcDeduplicationTable(maxSize, stripeNum, ttl);
+        this.payloads = new RpcDeduplicationTable(maxSize, stripeNum, ttl);
+    }
+
+    /**
+     * 只计算参数指纹, 直接使用 JavaBean
+     */
+    @Override
+    public boolean javaBeanData() {
+        return true;
+    }
+
+    @Override
+    public boolean rpcDuplicateHandle(String method, String correlationId) {
+        if (correlationId == null) {
+            return false;
+        }
+        return !this.correlationIds.putIfAbsent(correlationIdKey(method, correlationId));
+    }
+
+    @Override
+    public boolean duplicateHandle(String method, Object data) {
+        final boolean duplicate = !this.payloads.putIfAbsent(fingerprint(method, data));
+        if (duplicate) {
+            // 重复调用不会执行 afterHandle, 不再持有参数
+            this.fingerprints.get().clear();
+        }
+        return duplicate;
+    }
+
+    @Override
+    public R duplicateResult(String method, String correlationId, Object data) {
+        if (data == null) {
+            return correlationId == null ? null : this.correlationIds.get(correlationIdKey(method, correlationId));
+        }
+        try {
+            return this.payloads.get(fingerprint(method, data));
+        } finally {
+            this.fingerprints.get().clear();
+        }
+    }
+
+    @Override
+    public void afterHandle(String method, String correlationId, Object data, R result) {
+        if (correlationId != null) {
+            complete(this.correlationIds, correlationIdKey(method, correlationId), result);
+        }
+        final Fingerprint fingerprint = this.fingerprints.get();
+        if (data != null && fingerprint.data == data && method.equals(fingerprint.method)) {
+            // 只有做过参数检测的调用才需要记录
+            complete(this.payloads, fingerprint.value, result);
+        }
+        fingerprint.clear();
+    }
+
+    /**
+     * 调用异常时移除记录, 允许重试
+     */
+    private static void complete(RpcDeduplicationTable table, long key, R result) {
+        if (result == null) {
+            table.remove(key);
+        } else {
+            table.complete(key, result);
+        }
+    }
+
+    private static long correlationIdKey(String method, String correlationId) {
+        return RpcHash.mix(RpcHash.hash(correlationId) ^ Long.rotateLeft(RpcHash.hash(method), 31));
+    }
+
+    private long fingerprint(String method, Object data) {
+        final Fingerprint fingerprint = this.fingerprints.get();
+        if (fingerprint.data != data || !method.equals(fingerprint.method)) {
+            // 直接对 JSONWriter 复用的缓冲区计算哈希, 不复制出 byte[]
+            try (JSONWriter jsonWriter = JSONWriter.ofJSONB()) {
+                jsonWriter.writeAny(data);
+                fingerprint.hash.reset(RpcHash.hash(method));
+                jsonWriter.flushTo(fingerprint);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            fingerprint.value = fingerprint.hash.digest();
+            fingerprint.data = data;
+            fingerprint.method = method;
+        }
+        return fingerprint.value;
+    }
+
+    /**
+     * 参数指纹, 按 JSONWriter 写入的内容持续计算哈希, 与写入的次数无关
+     */
+    private final static class Fingerprint extends OutputStream {
+
+        private final RpcHash.XxHash64 hash = new RpcHash.XxHash64(0);
+        private Object data;
+        private String method;
+        private long value;
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            this.hash.update(bytes, offset, length);
+        }
+
+        @Override
+        public void write(int b) {
+            this.hash.update((byte) b);
+        }
+
+        private void clear() {
+            this.data = null;
+            this.method = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,163 @@
+package vip.toby.rpc.server;
+
+import vip.toby.rpc.entity.R;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RpcDeduplicationTable, 分段的定长开放寻址表, 记录 64 位指纹、过期时间和首次调用的结果
+ * <p>
+ * 容量在创建时固定, 找不到空位时淘汰探测范围内最早过期的记录, 查找和写入都不分配内存
+ *
+ * @author toby
+ */
+final class RpcDeduplicationTable {
+
+    // 线性探测的最大长度
+    private final static int MAX_PROBE = 16;
+    // 0 表示空位
+    private final static long EMPTY = 0L;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int stripeBits;
+    private final long ttl;
+
+    RpcDeduplicationTable(int maxSize, int stripeNum, long ttl) {
+        final int stripeCount = powerOfTwo(stripeNum);
+        final int slotCount = Math.max(MAX_PROBE, powerOfTwo(maxSize / stripeCount));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe(slotCount);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.stripeBits = Integer.numberOfTrailingZeros(stripeCount);
+        this.ttl = ttl;
+    }
+
+    /**
+     * 不存在或者已过期时写入并返回 true, 已存在时返回 false
+     */
+    boolean putIfAbsent(long fingerprint) {
+        final long key = fingerprint == EMPTY ? 1L : fingerprint;
+        final Stripe stripe = this.stripes[(int) key & this.stripeMask];
+        final long now = System.currentTimeMillis();
+        stripe.lock.lock();
+        try {
+            final int mask = stripe.keys.length - 1;
+            final int start = (int) (key >>> this.stripeBits) & mask;
+            int free = -1;
+            int oldest = start;
+            for (int i = 0; i < MAX_PROBE; i++) {
+                final int slot = (start + i) & mask;
+                final long slotKey = stripe.keys[slot];
+                if (slotKey == key) {
+                    if (stripe.expireAts[slot] > now) {
+                        return false;
+                    }
+                    free = slot;
+                    break;
+                }
+                if (free < 0 && (slotKey == EMPTY || stripe.expireAts[slot] <= now)) {
+                    free = slot;
+                }
+                if (stripe.expireAts[slot] < stripe.expireAts[oldest]) {
+                    oldest = slot;
+                }
+            }
+            final int slot = free >= 0 ? free : oldest;
+            stripe.keys[slot] = key;
+            stripe.expireAts[slot] = now + this.ttl;
+            stripe.results[slot] = null;
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 获取首次调用的结果, 不存在、已过期或者还在执行时返回 null
+     */
+    R get(long fingerprint) {
+        final long key = fingerprint == EMPTY ? 1L : fingerprint;
+        final Stripe stripe = this.stripes[(int) key & this.stripeMask];
+        stripe.lock.lock();
+        try {
+            final int slot = find(stripe, key);
+            return slot < 0 || stripe.expireAts[slot] <= System.currentTimeMillis() ? null : stripe.results[slot];
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 记录首次调用的结果, 只更新已存在的记录
+     */
+    void complete(long fingerprint, R result) {
+        final long key = fingerprint == EMPTY ? 1L : fingerprint;
+        final Stripe stripe = this.stripes[(int) key & this.stripeMask];
+        stripe.lock.lock();
+        try {
+            final int slot = find(stripe, key);
+            if (slot >= 0) {
+                stripe.results[slot] = result;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * 移除记录, 调用失败后允许重试
+     */
+    void remove(long fingerprint) {
+        final long key = fingerprint == EMPTY ? 1L : fingerprint;
+        final Stripe stripe = this.stripes[(int) key & this.stripeMask];
+        stripe.lock.lock();
+        try {
+            final int slot = find(stripe, key);
+            if (slot >= 0) {
+                // 保留 key 会影响之后的探测, 直接标记为过期
+                stripe.expireAts[slot] = 0L;
+                stripe.results[slot] = null;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private static int powerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    private int find(Stripe stripe, long key) {
+        final int mask = stripe.keys.length - 1;
+        final int start = (int) (key >>> this.stripeBits) & mask;
+        for (int i = 0; i < MAX_PROBE; i++) {
+            final int slot = (start + i) & mask;
+            if (stripe.keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 使用 ReentrantLock, 避免虚拟线程在 synchronized 中被固定
+     */
+    private final static class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] keys;
+        private final long[] expireAts;
+        private final R[] results;
+
+        private Stripe(int slotCount) {
+            this.keys = new long[slotCount];
+            this.expireAts = new long[slotCount];
+            this.results = new R[slotCount];
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+package vip.toby.rpc.server;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RpcServerAutoscaler, 按队列积压、处理耗时和消费者利用率在 threadNum ~ maxConcurrentConsumers 之间调整消费者数量
+ * <p>
+ * 连续 SCALE_UP_SAMPLES 次采样繁忙时扩容, 连续 SCALE_DOWN_SAMPLES 次采样空闲时缩容, 避免来回抖动
+ *
+ * @author toby
+ */
+@Slf4j
+public class RpcServerAutoscaler implements DisposableBean {
+
+    private final static int SCALE_UP_SAMPLES = 2;
+    private final static int SCALE_DOWN_SAMPLES = 6;
+    private final static double HIGH_UTILIZATION = 0.8;
+    private final static double LOW_UTILIZATION = 0.3;
+
+    private final String rpcName;
+    private final AbstractMessageListenerContainer messageListenerContainer;
+    private final RpcServerHandler rpcServerHandler;
+    private final RabbitAdmin rabbitAdmin;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final long interval;
+    private final ScheduledExecutorService scheduler;
+    // 未开启指标时为 null
+    private final Counter scaleUpCounter;
+    private final Counter scaleDownCounter;
+
+    private volatile int consumers;
+    private volatile long queueDepth;
+    private volatile double utilization;
+    private long lastHandledCount;
+    private long lastBusyNanos;
+    private long lastSampleNanos = System.nanoTime();
+    private int busySamples;
+    private int idleSamples;
+
+    RpcServerAutoscaler(
+            String rpcName,
+            AbstractMessageListenerContainer messageListenerContainer,
+            RpcServerHandler rpcServerHandler,
+            ConnectionFactory connectionFactory,
+            ApplicationEventPublisher applicationEventPublisher,
+            MeterRegistry meterRegistry,
+            int minConsumers,
+            int maxConsumers,
+            int interval
+    ) {
+        this.rpcName = rpcName;
+        this.messageListenerContainer = messageListenerContainer;
+        this.rpcServerHandler = rpcServerHandler;
+        this.rabbitAdmin = new RabbitAdmin(connectionFactory);
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        this.interval = interval;
+        this.consumers = minConsumers;
+        if (meterRegistry != null) {
+            Gauge.builder("simple.rpc.server.consumers", this, s -> s.consumers).tag("rpcName", rpcName).register(meterRegistry);
+            Gauge.builder("simple.rpc.server.queue.depth", this, s -> s.queueDepth).tag("rpcName", rpcName).register(meterRegistry);
+            Gauge.builder("simple.rpc.server.utilization", this, s -> s.utilization).tag("rpcName", rpcName).register(meterRegistry);
+        }
+        this.scaleUpCounter = meterRegistry != null ? Counter.builder("simple.rpc.server.scale").tag("rpcName", rpcName).tag("direction", "up").register(meterRegistry) : null;
+        this.scaleDownCounter = meterRegistry != null ? Counter.builder("simple.rpc.server.scale").tag("rpcName", rpcName).tag("direction", "down").register(meterRegistry) : null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name("RpcServerAutoscaler-" + rpcName).factory());
+        this.scheduler.scheduleWithFixedDelay(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        try {
+            if (!this.messageListenerContainer.isRunning()) {
+                return;
+            }
+            // 被动声明获取队列积压
+            final QueueInformation queueInformation = this.rabbitAdmin.getQueueInfo(this.rpcName);
+            final long queueDepth = queueInformation == null ? 0 : queueInformation.getMessageCount();
+            final long now = System.nanoTime();
+            final long handledCount = this.rpcServerHandler.getHandledCount();
+            final long busyNanos = this.rpcServerHandler.getBusyNanos();
+            final long handled = handledCount - this.lastHandledCount;
+            final long busy = busyNanos - this.lastBusyNanos;
+            final long elapsed = now - this.lastSampleNanos;
+            this.lastHandledCount = handledCount;
+            this.lastBusyNanos = busyNanos;
+            this.lastSampleNanos = now;
+            final int consumers = this.consumers;
+            double utilization = elapsed > 0 ? Math.min(1.0, (double) busy / ((double) elapsed * consumers)) : 0;
+            if (this.rpcServerHandler.getInFlight() >= consumers) {
+                // 长时间执行的消息还未计入 busy
+                utilization = 1.0;
+            }
+            final double latency = handled > 0 ? busy / 1_000_000.0 / handled : 0;
+            this.queueDepth = queueDepth;
+            this.utilization = utilization;
+            // 按当前速度无法在一个采样周期内消费完积压
+            final boolean backlog = queueDepth > 0 && (handled == 0 || queueDepth * latency / consumers > this.interval);
+            if (utilization >= HIGH_UTILIZATION || backlog) {
+                this.idleSamples = 0;
+                if (++this.busySamples >= SCALE_UP_SAMPLES && consumers < this.maxConsumers) {
+                    // 每次扩容一半, 尽快消化积压
+                    scale(consumers, Math.min(this.maxConsumers, consumers + Math.max(1, consumers / 2)), queueDepth, utilization, latency);
+                }
+            } else if (utilization <= LOW_UTILIZATION && queueDepth == 0) {
+                this.busySamples = 0;
+                if (++this.idleSamples >= SCALE_DOWN_SAMPLES && consumers > this.minConsumers) {
+                    // 每次缩容一个
+                    scale(consumers, consumers - 1, queueDepth, utilization, latency);
+                }
+            } else {
+                this.busySamples = 0;
+                this.idleSamples = 0;
+            }
+        } catch (Exception e) {
+            log.error("RpcServer: {} Autoscale Exception!", this.rpcName);
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void scale(int fromConsumers, int toConsumers, long queueDepth, double utilization, double latency) {
+        if (this.messageListenerContainer instanceof SimpleMessageListenerContainer simpleMessageListenerContainer) {
+            simpleMessageListenerContainer.setConcurrentConsumers(toConsumers);
+        } else if (this.messageListenerContainer instanceof DirectMessageListenerContainer directMessageListenerContainer) {
+            directMessageListenerContainer.setConsumersPerQueue(toConsumers);
+        }
+        this.consumers = toConsumers;
+        this.busySamples = 0;
+        this.idleSamples = 0;
+        final Counter scaleCounter = toConsumers > fromConsumers ? this.scaleUpCounter : this.scaleDownCounter;
+        if (scaleCounter != null) {
+            scaleCounter.increment();
+        }
+        log.info("RpcServer: {} Scaled! Consumers: {} -> {}, QueueDepth: {}, Utilization: {}, Latency: {}ms", this.rpcName, fromConsumers, toConsumers, queueDepth, utilization, latency);
+        this.applicationEventPublisher.publishEvent(new RpcServerScaledEvent(this, this.rpcName, fromConsumers, toConsumers, queueDepth, utilization, latency));
+    }
+
+    @Override
+    public void destroy() {
+        this.scheduler.shutdownNow();
+    }
+
+}
@@ -1,7 +1,7 @@
 package vip.toby.rpc.server;
 
 import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONException;
 import com.alibaba.fastjson2.JSONObject;
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
@@ -13,7 +13,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.jspecify.annotations.NonNull;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
-import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
 import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.annotation.AnnotationUtils;
@@ -21,18 +21,25 @@ import org.springframework.util.ReflectionUtils;
 import org.springframework.validation.annotation.Validated;
 import vip.toby.rpc.annotation.RpcDTO;
 import vip.toby.rpc.annotation.RpcServerMethod;
+import vip.toby.rpc.codec.RpcBatchingStrategy;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecs;
+import vip.toby.rpc.codec.RpcCompressor;
 import vip.toby.rpc.entity.R;
 import vip.toby.rpc.entity.RCode;
+import vip.toby.rpc.entity.RpcRequest;
 import vip.toby.rpc.entity.RpcStatus;
 import vip.toby.rpc.entity.RpcType;
 import vip.toby.rpc.properties.RpcProperties;
+import vip.toby.rpc.util.RpcMetrics;
 
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * RpcServerHandler
@@ -40,42 +47,65 @@ import java.util.concurrent.ConcurrentHashMap;
  * @author toby
  */
 @Slf4j
-public class RpcServerHandler implements ChannelAwareMessageListener, InitializingBean {
-
-    private final static Map<String, Method> METHOD_MAP = new ConcurrentHashMap<>();
-    private final static Map<String, Class<?>> METHOD_PARAMETER_TYPE_MAP = new ConcurrentHashMap<>();
-    private final static Map<String, Boolean> METHOD_ALLOW_DUPLICATE_MAP = new ConcurrentHashMap<>();
+public class RpcServerHandler implements ChannelAwareBatchMessageListener, InitializingBean {
 
     private final Object rpcServerBean;
     private final String rpcName;
     private final RpcType rpcType;
+    private final RpcCodec rpcCodec;
+    private final RpcCompressor rpcCompressor;
     private final Validator validator;
     private final RpcProperties rpcProperties;
     private final int xMessageTTL;
     private final RpcServerHandlerInterceptor rpcServerHandlerInterceptor;
+    // 为 null 时逐条 Ack
+    private final RpcAckCoalescer ackCoalescer;
+    // 为 null 时不记录指标
+    private final RpcMetrics rpcMetrics;
+    private final RpcAccessLogger rpcAccessLogger;
+    // 为 null 时不做过载保护
+    private final RpcAdmissionController admissionController;
+    private Map<String, RpcServerMethodDescriptor> descriptors = Map.of();
+    // 主队列的处理统计, 供 RpcServerAutoscaler 采样
+    private final LongAdder handledCount = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     RpcServerHandler(
             Object rpcServerBean,
             String rpcName,
             RpcType rpcType,
+            RpcCodec rpcCodec,
+            RpcCompressor rpcCompressor,
             Validator validator,
             RpcProperties rpcProperties,
             int xMessageTTL,
-            RpcServerHandlerInterceptor rpcServerHandlerInterceptor
+            RpcServerHandlerInterceptor rpcServerHandlerInterceptor,
+            RpcAckCoalescer ackCoalescer,
+            RpcMetrics rpcMetrics,
+            RpcAccessLogger rpcAccessLogger,
+            RpcAdmissionController admissionController
     ) {
         this.rpcServerBean = rpcServerBean;
         this.rpcName = rpcName;
         this.rpcType = rpcType;
+        this.rpcCodec = rpcCodec;
+        this.rpcCompressor = rpcCompressor;
         this.validator = validator;
         this.rpcProperties = rpcProperties;
         this.xMessageTTL = xMessageTTL;
         this.rpcServerHandlerInterceptor = rpcServerHandlerInterceptor;
+        this.ackCoalescer = ackCoalescer;
+        this.rpcMetrics = rpcMetrics;
+        this.rpcAccessLogger = rpcAccessLogger;
+        this.admissionController = admissionController;
     }
 
     @Override
     public void afterPropertiesSet() {
         // 初始化所有接口
         final Class<?> rpcServerClass = AopProxyUtils.ultimateTargetClass(this.rpcServerBean);
+        final Map<String, RpcServerMethodDescriptor> descriptors = new HashMap<>();
         for (Method method : rpcServerClass.getMethods()) {
             final RpcServerMethod rpcServerMethod = AnnotationUtils.findAnnotation(method, RpcServerMethod.class);
             if (rpcServerMethod != null) {
@@ -83,8 +113,7 @@ public class RpcServerHandler implements ChannelAwareMessageListener, Initializi
                 if (StringUtils.isBlank(methodName)) {
                     methodName = method.getName();
                 }
-                final String key = this.rpcName + "_" + methodName;
-                if (METHOD_MAP.containsKey(key)) {
+                if (descriptors.containsKey(methodName)) {
                     throw new RuntimeException("Class: " + rpcServerClass.getName() + ", Method: " + methodName + " 重复");
                 }
                 // 确保方法可访问
@@ -98,47 +127,152 @@ public class RpcServerHandler implements ChannelAwareMessageListener, Initializi
                         throw new RuntimeException("参数类型只能为 JSONObject 或者添加 @RpcDTO 注解, Class: " + rpcServerClass.getName() + ", Method: " + method.getName());
                     }
                 }
-                METHOD_MAP.put(key, method);
-                METHOD_PARAMETER_TYPE_MAP.put(key, parameterType);
-                METHOD_ALLOW_DUPLICATE_MAP.put(key, rpcServerMethod.allowDuplicate());
+                descriptors.put(methodName, new RpcServerMethodDescriptor(this.rpcServerBean, method, this.rpcName + "_" + methodName, parameterType, rpcServerMethod.allowDuplicate(), getValidationGroups(method, parameterType)));
                 log.debug("RpcServer: {}, Method: {} 已启动", this.rpcName, methodName);
             }
         }
+        this.descriptors = Map.copyOf(descriptors);
         log.info("{} 已启动", this.rpcName);
     }
 
     @Override
     public void onMessage(@NonNull Message message, Channel channel) throws IOException {
+        try {
+            handle(message, channel);
+        } finally {
+            // FIXME 同步和异步消息, 强制 Ack
+            if (this.rpcType == RpcType.SYNC || this.rpcType == RpcType.ASYNC) {
+                ack(message.getMessageProperties(), channel);
+            }
+        }
+    }
+
+    /**
+     * 按批消费, 逐条处理后统一 Ack
+     */
+    @Override
+    public void onMessageBatch(@NonNull List<Message> messages, Channel channel) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            for (Message message : messages) {
+                handle(message, channel);
+            }
+        } finally {
+            // FIXME 同步和异步消息, 强制 Ack, 同一个消费者按顺序处理, 可以一次 Ack 整批消息
+            if (this.rpcType == RpcType.SYNC || this.rpcType == RpcType.ASYNC) {
+                try {
+                    if (this.ackCoalescer != null) {
+                        // 已开启合并 Ack, 统一由 RpcAckCoalescer 处理, 避免重复 Ack
+                        for (Message message : messages) {
+                            ack(message.getMessageProperties(), channel);
+                        }
+                    } else {
+                        channel.basicAck(messages.getLast().getMessageProperties().getDeliveryTag(), true);
+                    }
+                } catch (IOException e) {
+                    log.error("RpcServer: {} Ack Exception!", this.rpcName);
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void ack(MessageProperties messageProperties, Channel channel) throws IOException {
+        // 批量消息共用 deliveryTag, 由最后一条记录 Ack
+        if (messageProperties.getHeader(RpcBatchingStrategy.BATCH_SIZE) != null && !messageProperties.isLastInBatch()) {
+            return;
+        }
+        if (this.ackCoalescer != null) {
+            this.ackCoalescer.complete(channel, messageProperties.getDeliveryTag());
+        } else {
+            channel.basicAck(messageProperties.getDeliveryTag(), false);
+        }
+    }
+
+    private void handle(Message message, Channel channel) {
+        // 客户端已经不再等待, 不解析直接丢弃; 截止时间由客户端时钟生成, 超过 maxClockSkew 才认为过期
+        final long now = System.currentTimeMillis();
+        if (message.getMessageProperties().getHeader(RpcRequest.DEADLINE) instanceof Number deadline && deadline.longValue() + this.rpcProperties.getMaxClockSkew() < now) {
+            error(RpcMetrics.EXPIRED);
+            log.warn("Expired! Deadline: {}, Late: {}ms, RpcServer: {}", deadline, now - deadline.longValue(), this.rpcName);
+            return;
+        }
+        // 过载时直接回复, 客户端无需等到超时
+        if (this.admissionController != null && !admit(message.getMessageProperties())) {
+            error(RpcMetrics.OVERLOADED);
+            log.debug("Overloaded! RpcServer: {}", this.rpcName);
+            try {
+                reply(channel, message.getMessageProperties(), RpcCodecs.of(message.getMessageProperties().getContentType(), this.rpcCodec), RpcStatus.OVERLOADED, null);
+            } catch (Exception e) {
+                log.error("RpcServer: {} Reply Exception!", this.rpcName);
+                log.error(e.getMessage(), e);
+            }
+            return;
+        }
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.begin();
+            this.rpcMetrics.requestSize(message.getBody().length);
+        }
+        try {
+            // 分区队列不参与伸缩, 不计入统计
+            if (!this.rpcName.equals(message.getMessageProperties().getConsumerQueue())) {
+                doHandle(message, channel);
+                return;
+            }
+            final long start = System.nanoTime();
+            this.inFlight.incrementAndGet();
+            try {
+                doHandle(message, channel);
+            } finally {
+                final long nanos = System.nanoTime() - start;
+                this.inFlight.decrementAndGet();
+                this.busyNanos.add(nanos);
+                this.handledCount.increment();
+                if (this.admissionController != null) {
+                    this.admissionController.record(nanos);
+                }
+            }
+        } finally {
+            if (this.rpcMetrics != null) {
+                this.rpcMetrics.end();
+            }
+        }
+    }
+
+    private void doHandle(Message message, Channel channel) {
         RpcStatus rpcStatus = RpcStatus.FAIL;
         MessageProperties messageProperties = null;
-        JSONObject paramData = null;
+        RpcCodec rpcCodec = this.rpcCodec;
+        RpcRequest paramData = null;
+        R serverResult = null;
         try {
             messageProperties = message.getMessageProperties();
-            // 组装参数 JSON
-            paramData = JSONB.parseObject(message.getBody());
-            // 构建返回 JSON 值
-            final JSONObject resultJson = new JSONObject();
+            // 按 content-type 选择编解码, 兼容滚动发布期间的混合流量
+            rpcCodec = RpcCodecs.of(messageProperties.getContentType(), this.rpcCodec);
+            // 解析参数, @RpcDTO 参数直接解析为 JavaBean
+            paramData = parse(rpcCodec, this.rpcCompressor.decompress(message.getBody(), messageProperties.getContentEncoding()));
             try {
                 // 获得当前 command
-                final String command = paramData.getString("command");
+                final String command = paramData.getCommand();
                 if (StringUtils.isBlank(command)) {
-                    log.error("Method Invoke Exception: Command 参数为空, RpcServer: {}, Received: {}", this.rpcName, paramData);
+                    log.error("Method Invoke Exception: Command 参数为空, RpcServer: {}, Received: {}", this.rpcName, received(paramData));
                     // 此错误一般出现在调试阶段，所以没有处理返回，只打印日志
                     return;
                 }
                 // 获取 data 数据
-                final JSONObject data = paramData.getJSONObject("data");
+                final Object data = paramData.getData();
                 if (data == null) {
-                    log.error("Method Invoke Exception: Data 参数错误, RpcServer: {}, Method: {}, Received: {}", this.rpcName, command, paramData);
+                    log.error("Method Invoke Exception: Data 参数错误, RpcServer: {}, Method: {}, Received: {}", this.rpcName, command, received(paramData));
                     // 此错误一般出现在调试阶段，所以没有处理返回，只打印日志
                     return;
                 }
                 // 异步执行任务
                 if (this.rpcType == RpcType.ASYNC || this.rpcType == RpcType.DELAY) {
                     final long start = System.currentTimeMillis();
-                    executeMethod(command, data, messageProperties.getCorrelationId(), false);
-                    final double offset = System.currentTimeMillis() - start;
-                    log(paramData, command, offset);
+                    executeMethod(command, data, messageProperties.getCorrelationId(), false, false);
+                    this.rpcAccessLogger.log(this.rpcName, command, paramData, System.currentTimeMillis() - start, this.xMessageTTL, this.rpcProperties.getServerSlowCallTimePercent());
                     // FIXME 延迟消息, 处理成功才 Ack
                     if (this.rpcType == RpcType.DELAY) {
                         channel.basicAck(messageProperties.getDeliveryTag(), false);
@@ -147,95 +281,188 @@ public class RpcServerHandler implements ChannelAwareMessageListener, Initializi
                 }
                 // 同步执行任务并返回结果
                 final long start = System.currentTimeMillis();
-                final Object serverResult = executeMethod(command, data, messageProperties.getCorrelationId(), true);
+                serverResult = (R) executeMethod(command, data, messageProperties.getCorrelationId(), true, messageProperties.getHeader(RpcRequest.HEDGE) != null);
                 if (serverResult != null) {
-                    final long offset = System.currentTimeMillis() - start;
-                    log(paramData, command, offset);
+                    this.rpcAccessLogger.log(this.rpcName, command, paramData, System.currentTimeMillis() - start, this.xMessageTTL, this.rpcProperties.getServerSlowCallTimePercent());
                     // 修改状态
                     rpcStatus = RpcStatus.OK;
-                    resultJson.put("data", ((R) serverResult).toJSON());
                 } else {
                     rpcStatus = RpcStatus.NOT_FOUND;
                 }
             } catch (Exception e) {
-                log.error("Method Invoke Exception! Received: {}", paramData);
+                log.error("Method Invoke Exception! Received: {}", received(paramData));
                 log.error(e.getMessage(), e);
             }
             // 异步或者延迟任务
             if (this.rpcType == RpcType.ASYNC || this.rpcType == RpcType.DELAY) {
                 return;
             }
-            // 状态设置
-            resultJson.put("code", rpcStatus.getCode());
-            // 构建配置
-            final BasicProperties replyProps = new BasicProperties.Builder().correlationId(messageProperties.getCorrelationId())
-                    .contentEncoding(StandardCharsets.UTF_8.name())
-                    .contentType(messageProperties.getContentType())
-                    .build();
-            // 反馈消息
-            channel.basicPublish(Objects.requireNonNull(messageProperties.getReplyToAddress())
-                    .getExchangeName(), messageProperties.getReplyToAddress()
-                    .getRoutingKey(), replyProps, JSONB.toBytes(resultJson));
+            reply(channel, messageProperties, rpcCodec, rpcStatus, serverResult);
         } catch (Exception e) {
-            log.error("RpcServer: {} Exception! Received: {}", this.rpcName, paramData);
+            log.error("RpcServer: {} Exception! Received: {}", this.rpcName, received(paramData));
             log.error(e.getMessage(), e);
-        } finally {
-            // FIXME 同步和异步消息, 强制 Ack
-            if (this.rpcType == RpcType.SYNC || this.rpcType == RpcType.ASYNC) {
-                if (messageProperties != null) {
-                    channel.basicAck(messageProperties.getDeliveryTag(), false);
-                }
+        }
+    }
+
+    private void reply(Channel channel, MessageProperties messageProperties, RpcCodec rpcCodec, RpcStatus rpcStatus, R serverResult) throws IOException {
+        // 回复消息体, 客户端可以解压并且超过阈值时压缩
+        byte[] replyBody = rpcCodec.encodeReply(rpcStatus, serverResult);
+        String contentEncoding = StandardCharsets.UTF_8.name();
+        if (RpcCompressor.DEFLATE.equals(messageProperties.getHeader(RpcCompressor.ACCEPT_ENCODING))) {
+            final byte[] compressed = this.rpcCompressor.compress(replyBody);
+            if (compressed != null) {
+                replyBody = compressed;
+                contentEncoding = RpcCompressor.DEFLATE;
             }
         }
+        // 构建配置
+        final BasicProperties replyProps = new BasicProperties.Builder().correlationId(messageProperties.getCorrelationId())
+                .contentEncoding(contentEncoding)
+                .contentType(rpcCodec.getContentType())
+                .build();
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.responseSize(replyBody.length);
+        }
+        // 反馈消息
+        channel.basicPublish(Objects.requireNonNull(messageProperties.getReplyToAddress())
+                .getExchangeName(), messageProperties.getReplyToAddress()
+                .getRoutingKey(), replyProps, replyBody);
+    }
+
+    private boolean admit(MessageProperties messageProperties) {
+        final long deadline = messageProperties.getHeader(RpcRequest.DEADLINE) instanceof Number number ? number.longValue() : 0;
+        // Broker 和服务端在同一个集群内, 优先使用 Broker 的入队时间
+        if (messageProperties.getHeader(RpcAdmissionController.BROKER_TIMESTAMP) instanceof Number enqueuedAt) {
+            return this.admissionController.admit(enqueuedAt.longValue(), true, deadline, this.inFlight.get());
+        }
+        final long timestamp = messageProperties.getHeader(RpcRequest.TIMESTAMP) instanceof Number number ? number.longValue() : 0;
+        return this.admissionController.admit(timestamp, false, deadline, this.inFlight.get());
     }
 
-    private Object executeMethod(String command, Object data, String correlationId, boolean isSync) {
-        // 获取当前服务的反射方法调用
-        final String key = this.rpcName + "_" + command;
-        // 通过缓存来优化性能
-        final Method method = METHOD_MAP.get(key);
-        if (method == null) {
+    /**
+     * @param hedge 是否为客户端的对冲请求, 参数与首次请求相同, 不按重复调用拒绝
+     */
+    private Object executeMethod(String command, Object data, String correlationId, boolean isSync, boolean hedge) {
+        // 获取当前服务的方法调用
+        final RpcServerMethodDescriptor descriptor = this.descriptors.get(command);
+        if (descriptor == null) {
+            error(RpcMetrics.NOT_FOUND);
             log.error("Not Found! RpcServer: {}, Method: {}", this.rpcName, command);
             return null;
         }
+        final long start = System.nanoTime();
         // 重复调用检测
-        if (this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.rpcDuplicateHandle(key, correlationId)) {
+        if (this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.rpcDuplicateHandle(descriptor.getKey(), correlationId)) {
+            error(RpcMetrics.DUPLICATE);
             log.warn("Call Duplicate! RpcServer: {}, Method: {}", this.rpcName, command);
-            return isSync ? R.build(RCode.DUPLICATE) : null;
+            return isSync ? duplicateResult(descriptor, correlationId, null) : null;
         }
-        if (!METHOD_ALLOW_DUPLICATE_MAP.get(key) && this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.duplicateHandle(key, data)) {
+        // 重复调用检测时的参数
+        final Object received = interceptorData(data);
+        if (hedge && !descriptor.isAllowDuplicate() && this.rpcServerHandlerInterceptor != null) {
+            // 首次请求已完成时直接返回其结果, 否则照常执行
+            final R result = this.rpcServerHandlerInterceptor.duplicateResult(descriptor.getKey(), correlationId, received);
+            if (result != null) {
+                log.debug("Hedge Replayed! RpcServer: {}, Method: {}", this.rpcName, command);
+                this.rpcServerHandlerInterceptor.afterHandle(descriptor.getKey(), correlationId, null, result);
+                return result;
+            }
+        } else if (!descriptor.isAllowDuplicate() && this.rpcServerHandlerInterceptor != null && this.rpcServerHandlerInterceptor.duplicateHandle(descriptor.getKey(), received)) {
+            error(RpcMetrics.DUPLICATE);
             log.warn("Call Duplicate! RpcServer: {}, Method: {}", this.rpcName, command);
-            return isSync ? R.build(RCode.DUPLICATE) : null;
+            final R result = isSync ? this.rpcServerHandlerInterceptor.duplicateResult(descriptor.getKey(), correlationId, received) : null;
+            // [消息 ID] 已记录为处理中, 按重复调用的结果完成, 重新投递时返回同样的结果
+            this.rpcServerHandlerInterceptor.afterHandle(descriptor.getKey(), correlationId, null, result);
+            return isSync ? (result != null ? result : R.build(RCode.DUPLICATE)) : null;
         }
-        // JavaBean 参数
-        final Class<?> parameterType = METHOD_PARAMETER_TYPE_MAP.get(key);
-        if (parameterType != JSONObject.class) {
-            data = JSON.to(parameterType, data);
-            // 参数校验
-            final Annotation[] annotations = method.getParameters()[0].getAnnotations();
-            for (Annotation ann : annotations) {
-                // 先尝试获取 @Validated 注解
-                final Validated validatedAnn = AnnotationUtils.getAnnotation(ann, Validated.class);
-                // 如果直接标注了 @Validated，那么直接开启校验
-                // 如果没有，那么判断参数前是否有 Valid 开头的注解
-                if (validatedAnn != null || ann.annotationType().getSimpleName().startsWith("Valid")) {
-                    final Class<?>[] validationHints = validated(ann, validatedAnn);
-                    // 执行校验
-                    final Set<ConstraintViolation<Object>> constraintViolations = validator.validate(data, validationHints);
+        R result = null;
+        try {
+            // JavaBean 参数
+            final Class<?> parameterType = descriptor.getParameterType();
+            if (parameterType != JSONObject.class) {
+                if (!parameterType.isInstance(data)) {
+                    data = JSON.to(parameterType, data);
+                }
+                // 参数校验
+                final Class<?>[] validationGroups = descriptor.getValidationGroups();
+                if (validationGroups != null) {
+                    final Set<ConstraintViolation<Object>> constraintViolations = validator.validate(data, validationGroups);
                     if (!constraintViolations.isEmpty()) {
                         // 校验不合格处理
                         final List<String> tipList = new ArrayList<>();
                         constraintViolations.forEach(cv -> tipList.add(cv.getMessage()));
                         final String details = StringUtils.join(tipList, ", ");
+                        error(RpcMetrics.INVALID);
                         log.error("Param Invalid! Detail: {}, RpcServer: {}, Method: {}", details, this.rpcName, command);
-                        return isSync ? R.failMessage(details) : null;
+                        result = R.failMessage(details);
+                        return isSync ? result : null;
                     }
-                    break;
                 }
             }
+            // 使用 MethodHandle 调用方法
+            RpcStatus rpcStatus = RpcStatus.FAIL;
+            try {
+                result = (R) descriptor.invoke(data);
+                rpcStatus = RpcStatus.OK;
+                return result;
+            } finally {
+                if (this.rpcMetrics != null) {
+                    this.rpcMetrics.record(command, rpcStatus, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            if (this.rpcServerHandlerInterceptor != null) {
+                this.rpcServerHandlerInterceptor.afterHandle(descriptor.getKey(), correlationId, received, result);
+            }
         }
-        // 使用 ReflectionUtils 调用方法
-        return ReflectionUtils.invokeMethod(method, this.rpcServerBean, data);
+    }
+
+    /**
+     * 拦截器使用的参数, 拦截器未声明 javaBeanData 时 JavaBean 转换为 JSONObject
+     */
+    private Object interceptorData(Object data) {
+        if (this.rpcServerHandlerInterceptor == null || data instanceof JSONObject || this.rpcServerHandlerInterceptor.javaBeanData()) {
+            return data;
+        }
+        return JSON.toJSON(data);
+    }
+
+    /**
+     * SYNC 重复调用的结果, 拦截器未记录首次调用的结果时返回 RCode.DUPLICATE
+     */
+    private R duplicateResult(RpcServerMethodDescriptor descriptor, String correlationId, Object data) {
+        final R result = this.rpcServerHandlerInterceptor.duplicateResult(descriptor.getKey(), correlationId, data);
+        return result != null ? result : R.build(RCode.DUPLICATE);
+    }
+
+    private void error(String type) {
+        if (this.rpcMetrics != null) {
+            this.rpcMetrics.error(type);
+        }
+    }
+
+    /**
+     * 启动时解析参数校验分组, 未开启校验或者 DTO 没有任何约束时返回 null
+     */
+    private Class<?>[] getValidationGroups(Method method, Class<?> parameterType) {
+        if (parameterType == JSONObject.class) {
+            return null;
+        }
+        final Annotation[] annotations = method.getParameters()[0].getAnnotations();
+        for (Annotation ann : annotations) {
+            // 先尝试获取 @Validated 注解
+            final Validated validatedAnn = AnnotationUtils.getAnnotation(ann, Validated.class);
+            // 如果直接标注了 @Validated，那么直接开启校验
+            // 如果没有，那么判断参数前是否有 Valid 开头的注解
+            if (validatedAnn != null || ann.annotationType().getSimpleName().startsWith("Valid")) {
+                // DTO 没有任何约束, 跳过校验
+                if (!this.validator.getConstraintsForClass(parameterType).isBeanConstrained()) {
+                    return null;
+                }
+                return validated(ann, validatedAnn);
+            }
+        }
+        return null;
     }
 
     private Class<?>[] validated(Annotation ann, Validated validatedAnn) {
@@ -257,12 +484,40 @@ public class RpcServerHandler implements ChannelAwareMessageListener, Initializi
         return parameterTypes[0];
     }
 
-    private void log(JSONObject paramData, String command, double offset) {
-        if (this.xMessageTTL > 0 && offset > Math.floor(this.rpcProperties.getServerSlowCallTimePercent() * this.xMessageTTL)) {
-            log.info("Call Slowing! Duration: {}ms, RpcServer: {}, Method: {}, Received: {}", offset, this.rpcName, command, paramData);
-        } else {
-            log.info("Duration: {}ms, RpcServer: {}, Method: {}, Received: {}", offset, this.rpcName, command, paramData);
+    private RpcRequest parse(RpcCodec rpcCodec, byte[] body) {
+        try {
+            return rpcCodec.decodeRequest(body, this::getParameterType);
+        } catch (JSONException e) {
+            // 无法直接解析为 JavaBean 时退回 JSONObject, 由 executeMethod 返回错误
+            return rpcCodec.decodeRequest(body, command -> null);
         }
     }
 
+    /**
+     * 根据 command 获取参数类型, 不存在时返回 null
+     */
+    private Class<?> getParameterType(String command) {
+        final RpcServerMethodDescriptor descriptor = this.descriptors.get(command);
+        return descriptor == null ? null : descriptor.getParameterType();
+    }
+
+    long getHandledCount() {
+        return this.handledCount.sum();
+    }
+
+    long getBusyNanos() {
+        return this.busyNanos.sum();
+    }
+
+    int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * 错误日志中的请求参数, 输出时才渲染并截断
+     */
+    private Object received(RpcRequest paramData) {
+        return RpcAccessLogger.payload(paramData, this.rpcAccessLogger.getMaxPayloadLength());
+    }
+
 }
@@ -1,5 +1,7 @@
 package vip.toby.rpc.server;
 
+import vip.toby.rpc.entity.R;
+
 /**
  * RpcServerHandlerInterceptor
  *
@@ -18,15 +20,49 @@ public interface RpcServerHandlerInterceptor {
         return false;
     }
 
+    /**
+     * 参数是否直接使用添加 @RpcDTO 的 JavaBean, 可以省去转换; 默认 false, 与旧版本一致统一为 JSONObject
+     *
+     * @return 是否使用 JavaBean
+     */
+    default boolean javaBeanData() {
+        return false;
+    }
+
     /**
      * 通过 [参数] 做重复调用检测
      *
      * @param method 方法
-     * @param data   参数
+     * @param data   参数, JSONObject; javaBeanData 返回 true 时也可能为添加 @RpcDTO 的 JavaBean
      * @return 是否重复
      */
     default boolean duplicateHandle(String method, Object data) {
         return false;
     }
 
+    /**
+     * SYNC 重复调用时返回的结果, 例如首次调用的结果, 为 null 时返回 RCode.DUPLICATE
+     * <p>
+     * 客户端的对冲请求不做 [参数] 检测, 执行前先调用, 返回首次调用的结果时不再执行, 为 null 时照常执行
+     *
+     * @param method        方法
+     * @param correlationId 消息 ID
+     * @param data          参数, 通过 [消息 ID] 检测到重复时为 null
+     * @return 重复调用的结果
+     */
+    default R duplicateResult(String method, String correlationId, Object data) {
+        return null;
+    }
+
+    /**
+     * 调用完成, 通过 [参数] 检测到重复时也会调用, 用于完成 [消息 ID] 的记录
+     *
+     * @param method        方法
+     * @param correlationId 消息 ID
+     * @param data          参数, 与重复调用检测时的参数为同一个对象; 通过 [参数] 检测到重复时为 null
+     * @param result        调用结果, 调用异常时为 null; 通过 [参数] 检测到重复时为 duplicateResult 的结果
+     */
+    default void afterHandle(String method, String correlationId, Object data, R result) {
+    }
+
 }
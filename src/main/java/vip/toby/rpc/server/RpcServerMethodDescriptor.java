@@ -0,0 +1,77 @@
+package vip.toby.rpc.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * RpcServerMethodDescriptor, 启动时为每个 @RpcServerMethod 预先解析好调用信息
+ *
+ * @author toby
+ */
+final class RpcServerMethodDescriptor {
+
+    private final String key;
+    private final MethodHandle methodHandle;
+    private final Class<?> parameterType;
+    private final boolean allowDuplicate;
+    private final Class<?>[] validationGroups;
+
+    RpcServerMethodDescriptor(
+            Object rpcServerBean,
+            Method method,
+            String key,
+            Class<?> parameterType,
+            boolean allowDuplicate,
+            Class<?>[] validationGroups
+    ) {
+        this.key = key;
+        this.parameterType = parameterType;
+        this.allowDuplicate = allowDuplicate;
+        this.validationGroups = validationGroups;
+        try {
+            // 绑定到服务实例, 统一为 (Object)Object 以便 invokeExact
+            this.methodHandle = MethodHandles.lookup()
+                    .unreflect(method)
+                    .bindTo(rpcServerBean)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Method: " + method.getName() + " 无法访问", e);
+        }
+    }
+
+    /**
+     * 拦截器使用的方法标识, rpcName_command
+     */
+    String getKey() {
+        return this.key;
+    }
+
+    Class<?> getParameterType() {
+        return this.parameterType;
+    }
+
+    boolean isAllowDuplicate() {
+        return this.allowDuplicate;
+    }
+
+    /**
+     * 参数校验分组, 为 null 时无需校验
+     */
+    Class<?>[] getValidationGroups() {
+        return this.validationGroups;
+    }
+
+    Object invoke(Object data) {
+        try {
+            return this.methodHandle.invokeExact(data);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+}
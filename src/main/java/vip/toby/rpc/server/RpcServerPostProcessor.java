@@ -1,5 +1,6 @@
 package vip.toby.rpc.server;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import jakarta.validation.ValidatorFactory;
@@ -11,6 +12,8 @@ import org.springframework.amqp.core.CustomExchange;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,8 +26,14 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import vip.toby.rpc.annotation.RpcServer;
+import vip.toby.rpc.codec.RpcBatchingStrategy;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecs;
+import vip.toby.rpc.codec.RpcCompressor;
+import vip.toby.rpc.entity.RpcContainerType;
 import vip.toby.rpc.entity.RpcType;
 import vip.toby.rpc.properties.RpcProperties;
+import vip.toby.rpc.util.RpcMetrics;
 import vip.toby.rpc.util.RpcUtil;
 
 import javax.annotation.Nonnull;
@@ -61,6 +70,8 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
     private AbstractExchange delayDirectExchange;
     private Validator validator;
     private RpcProperties rpcProperties;
+    private MeterRegistry meterRegistry;
+    private RpcAccessLogger rpcAccessLogger;
 
     @Override
     public Object postProcessBeforeInitialization(
@@ -88,26 +99,28 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
         final String rpcValue = rpcServer.name();
         for (RpcType rpcType : rpcServer.type()) {
             final String rpcName = RpcUtil.getRpcName(rpcType, rpcValue);
+            final RpcProperties.Server consumer = consumer(rpcName, rpcServer);
             switch (rpcType) {
                 case SYNC -> {
                     final Map<String, Object> params = new HashMap<>(1);
                     params.put("x-message-ttl", rpcServer.xMessageTTL());
-                    final RpcServerHandler syncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), rpcServer.xMessageTTL(), rpcServerHandlerInterceptor);
+                    final RpcServerHandler syncServerHandler = rpcServerHandler(rpcName, rpcType, RpcCodecs.get(rpcServer.codec()), rpcCompressor(rpcName), rpcServerBean, getValidator(), getRpcProperties(), rpcServer.xMessageTTL(), rpcServerHandlerInterceptor, null, rpcMetrics(rpcName), getRpcAccessLogger(), admissionController(rpcName, rpcServer));
                     final Queue syncQueue = queue(rpcName, rpcType, true, params);
                     binding(rpcName, rpcType, syncQueue);
-                    messageListenerContainer(rpcName, syncQueue, syncServerHandler, rpcServer.threadNum());
+                    messageListenerContainer(rpcName, syncQueue, syncServerHandler, rpcServer.threadNum(), rpcServer.virtualThreadNum(), consumer, false);
                 }
                 case ASYNC, DELAY -> {
                     final int partitionNum = rpcServer.partitionNum();
-                    final RpcServerHandler asyncServerHandler = rpcServerHandler(rpcName, rpcType, rpcServerBean, getValidator(), getRpcProperties(), 0, rpcServerHandlerInterceptor);
+                    final RpcServerHandler asyncServerHandler = rpcServerHandler(rpcName, rpcType, RpcCodecs.get(rpcServer.codec()), rpcCompressor(rpcName), rpcServerBean, getValidator(), getRpcProperties(), 0, rpcServerHandlerInterceptor, rpcType == RpcType.ASYNC ? ackCoalescer(rpcName, rpcServer) : null, rpcMetrics(rpcName), getRpcAccessLogger(), null);
                     final Queue asyncQueue = queue(rpcName, rpcType, false, null);
                     binding(rpcName, rpcType, asyncQueue);
-                    messageListenerContainer(rpcName, asyncQueue, asyncServerHandler, rpcServer.threadNum());
+                    messageListenerContainer(rpcName, asyncQueue, asyncServerHandler, rpcServer.threadNum(), rpcServer.virtualThreadNum(), consumer, false);
                     if (RpcUtil.partitionEnabled(partitionNum)) {
                         for (int partition = 0; partition < partitionNum; partition++) {
                             final Queue partitionQueue = queue(RpcUtil.getPartitionRoutingKey(rpcName, partition), rpcType, false, null, true);
                             binding(partitionQueue.getName(), rpcType, partitionQueue);
-                            messageListenerContainer(partitionQueue.getName(), partitionQueue, asyncServerHandler, 1);
+                            // 分区队列需要保证顺序, 固定单线程消费
+                            messageListenerContainer(partitionQueue.getName(), partitionQueue, asyncServerHandler, 1, 0, consumer, true);
                         }
                     }
                 }
@@ -145,29 +158,158 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
     private RpcServerHandler rpcServerHandler(
             String rpcName,
             RpcType rpcType,
+            RpcCodec rpcCodec,
+            RpcCompressor rpcCompressor,
             Object rpcServerBean,
             Validator validator,
             RpcProperties rpcProperties,
             int xMessageTTL,
-            RpcServerHandlerInterceptor rpcServerHandlerInterceptor
+            RpcServerHandlerInterceptor rpcServerHandlerInterceptor,
+            RpcAckCoalescer ackCoalescer,
+            RpcMetrics rpcMetrics,
+            RpcAccessLogger rpcAccessLogger,
+            RpcAdmissionController admissionController
     ) {
-        return registerBean(this.applicationContext, "RpcServerHandler-" + rpcName, RpcServerHandler.class, rpcServerBean, rpcName, rpcType, validator, rpcProperties, xMessageTTL, rpcServerHandlerInterceptor);
+        return registerBean(this.applicationContext, "RpcServerHandler-" + rpcName, RpcServerHandler.class, rpcServerBean, rpcName, rpcType, rpcCodec, rpcCompressor, validator, rpcProperties, xMessageTTL, rpcServerHandlerInterceptor, ackCoalescer, rpcMetrics, rpcAccessLogger, admissionController);
     }
 
     /**
-     * 实例化 SimpleMessageListenerContainer
+     * 实例化 RpcAdmissionController, 只用于 SYNC, admissionTarget 大于 0 时开启
+     */
+    private RpcAdmissionController admissionController(String rpcName, RpcServer rpcServer) {
+        if (rpcServer.admissionTarget() <= 0) {
+            return null;
+        }
+        if (rpcServer.admissionInterval() <= 0) {
+            throw new RuntimeException("admissionInterval 必须大于 0, RpcServer: " + rpcName);
+        }
+        return new RpcAdmissionController(rpcServer.admissionTarget(), rpcServer.admissionInterval(), getRpcProperties().getMaxClockSkew());
+    }
+
+    /**
+     * 服务端只在客户端声明可以解压时压缩回复
+     */
+    private RpcCompressor rpcCompressor(String rpcName) {
+        return new RpcCompressor(rpcName, getRpcProperties().getCompressThreshold(), getRpcProperties().getMaxDecompressedSize(), getMeterRegistry());
+    }
+
+    /**
+     * 实例化 RpcMetrics, 未开启时返回 null
+     */
+    private RpcMetrics rpcMetrics(String rpcName) {
+        return getMeterRegistry() != null ? new RpcMetrics(RpcMetrics.SERVER, rpcName, getMeterRegistry()) : null;
+    }
+
+    /**
+     * 实例化 RpcAckCoalescer, 只用于 ASYNC, ackBatchSize 大于 1 时开启
+     */
+    private RpcAckCoalescer ackCoalescer(String rpcName, RpcServer rpcServer) {
+        if (rpcServer.ackBatchSize() <= 1) {
+            return null;
+        }
+        if (rpcServer.ackBatchTimeout() <= 0) {
+            throw new RuntimeException("ackBatchTimeout 必须大于 0, RpcServer: " + rpcName);
+        }
+        return registerBean(this.applicationContext, "RpcAckCoalescer-" + rpcName, RpcAckCoalescer.class, rpcName, rpcServer.ackBatchSize(), rpcServer.ackBatchTimeout());
+    }
+
+    /**
+     * 实例化 MessageListenerContainer
      */
     private void messageListenerContainer(
             String rpcName,
             Queue queue,
             RpcServerHandler rpcServerHandler,
-            int threadNum
+            int threadNum,
+            int virtualThreadNum,
+            RpcProperties.Server consumer,
+            boolean partition
     ) {
-        final SimpleMessageListenerContainer messageListenerContainer = registerBean(this.applicationContext, "MessageListenerContainer-" + rpcName, SimpleMessageListenerContainer.class, this.connectionFactory);
+        final AbstractMessageListenerContainer messageListenerContainer;
+        if (consumer.getContainerType() == RpcContainerType.DIRECT) {
+            if (consumer.getConsumerBatchEnabled()) {
+                throw new RuntimeException("DIRECT 容器不支持按批消费, RpcServer: " + rpcName);
+            }
+            // 直接在 RabbitMQ 客户端线程中调用, 每个消费者对应一个 Channel
+            final DirectMessageListenerContainer directMessageListenerContainer = registerBean(this.applicationContext, "MessageListenerContainer-" + rpcName, DirectMessageListenerContainer.class, this.connectionFactory);
+            directMessageListenerContainer.setConsumersPerQueue(threadNum);
+            messageListenerContainer = directMessageListenerContainer;
+        } else {
+            final SimpleMessageListenerContainer simpleMessageListenerContainer = registerBean(this.applicationContext, "MessageListenerContainer-" + rpcName, SimpleMessageListenerContainer.class, this.connectionFactory);
+            simpleMessageListenerContainer.setConcurrentConsumers(threadNum);
+            if (!partition && !consumer.getAutoscale() && consumer.getMaxConcurrentConsumers() > threadNum) {
+                simpleMessageListenerContainer.setMaxConcurrentConsumers(consumer.getMaxConcurrentConsumers());
+            }
+            if (consumer.getBatchSize() > 1) {
+                simpleMessageListenerContainer.setBatchSize(consumer.getBatchSize());
+            }
+            // 按批消费时调用 RpcServerHandler.onMessageBatch
+            simpleMessageListenerContainer.setConsumerBatchEnabled(consumer.getConsumerBatchEnabled());
+            if (consumer.getReceiveTimeout() > 0) {
+                simpleMessageListenerContainer.setReceiveTimeout(consumer.getReceiveTimeout());
+            }
+            messageListenerContainer = simpleMessageListenerContainer;
+        }
         messageListenerContainer.setQueueNames(queue.getName());
-        messageListenerContainer.setMessageListener(rpcServerHandler);
+        if (virtualThreadNum > 0) {
+            if (consumer.getConsumerBatchEnabled()) {
+                throw new RuntimeException("虚拟线程模式不支持按批消费, RpcServer: " + rpcName);
+            }
+            // 虚拟线程模式, 未 Ack 的消息数量即为并发数
+            messageListenerContainer.setPrefetchCount(consumer.getPrefetch() > 0 ? consumer.getPrefetch() : virtualThreadNum);
+            messageListenerContainer.setMessageListener(registerBean(this.applicationContext, "RpcServerVirtualThreadListener-" + rpcName, RpcServerVirtualThreadListener.class, rpcName, rpcServerHandler, virtualThreadNum));
+        } else {
+            if (consumer.getPrefetch() > 0) {
+                messageListenerContainer.setPrefetchCount(consumer.getPrefetch());
+            }
+            messageListenerContainer.setMessageListener(rpcServerHandler);
+        }
         messageListenerContainer.setAcknowledgeMode(AcknowledgeMode.MANUAL);
-        messageListenerContainer.setConcurrentConsumers(threadNum);
+        // 拆分 ASYNC 批量消息, 逐条调用 RpcServerHandler
+        messageListenerContainer.setBatchingStrategy(new RpcBatchingStrategy());
+        if (!partition && consumer.getAutoscale()) {
+            autoscaler(rpcName, messageListenerContainer, rpcServerHandler, threadNum, virtualThreadNum, consumer);
+        }
+    }
+
+    /**
+     * 实例化 RpcServerAutoscaler, 分区队列固定单线程消费, 不参与伸缩
+     */
+    private void autoscaler(
+            String rpcName,
+            AbstractMessageListenerContainer messageListenerContainer,
+            RpcServerHandler rpcServerHandler,
+            int threadNum,
+            int virtualThreadNum,
+            RpcProperties.Server consumer
+    ) {
+        if (virtualThreadNum > 0) {
+            throw new RuntimeException("虚拟线程模式不支持自动伸缩, RpcServer: " + rpcName);
+        }
+        if (consumer.getMaxConcurrentConsumers() <= threadNum) {
+            throw new RuntimeException("自动伸缩时 maxConcurrentConsumers 必须大于 threadNum, RpcServer: " + rpcName);
+        }
+        if (consumer.getAutoscaleInterval() <= 0) {
+            throw new RuntimeException("autoscaleInterval 必须大于 0, RpcServer: " + rpcName);
+        }
+        registerBean(this.applicationContext, "RpcServerAutoscaler-" + rpcName, RpcServerAutoscaler.class, rpcName, messageListenerContainer, rpcServerHandler, this.connectionFactory, this.applicationContext, getMeterRegistry(), threadNum, consumer.getMaxConcurrentConsumers(), consumer.getAutoscaleInterval());
+    }
+
+    /**
+     * 消费配置, RpcProperties 中的配置优先于 @RpcServer
+     */
+    private RpcProperties.Server consumer(String rpcName, RpcServer rpcServer) {
+        final RpcProperties.Server server = getRpcProperties().getServer(rpcName, rpcServer.name());
+        final RpcProperties.Server consumer = new RpcProperties.Server();
+        consumer.setPrefetch(server.getPrefetch() != null ? server.getPrefetch() : rpcServer.prefetch());
+        consumer.setBatchSize(server.getBatchSize() != null ? server.getBatchSize() : rpcServer.batchSize());
+        consumer.setConsumerBatchEnabled(server.getConsumerBatchEnabled() != null ? server.getConsumerBatchEnabled() : rpcServer.consumerBatchEnabled());
+        consumer.setReceiveTimeout(server.getReceiveTimeout() != null ? server.getReceiveTimeout() : rpcServer.receiveTimeout());
+        consumer.setMaxConcurrentConsumers(server.getMaxConcurrentConsumers() != null ? server.getMaxConcurrentConsumers() : rpcServer.maxConcurrentConsumers());
+        consumer.setContainerType(server.getContainerType() != null ? server.getContainerType() : rpcServer.containerType());
+        consumer.setAutoscale(server.getAutoscale() != null ? server.getAutoscale() : rpcServer.autoscale());
+        consumer.setAutoscaleInterval(server.getAutoscaleInterval() != null ? server.getAutoscaleInterval() : rpcServer.autoscaleInterval());
+        return consumer;
     }
 
     /**
@@ -198,6 +340,29 @@ public class RpcServerPostProcessor implements BeanPostProcessor {
         return this.rpcProperties;
     }
 
+    /**
+     * 获取 MeterRegistry, 未配置时使用全局 MeterRegistry, 未开启指标或者未引入 micrometer-core 时返回 null, 所有组件都不注册指标
+     */
+    private MeterRegistry getMeterRegistry() {
+        if (!getRpcProperties().isMetricsEnabled() || !RpcUtil.micrometerPresent()) {
+            return null;
+        }
+        if (this.meterRegistry == null) {
+            this.meterRegistry = RpcMetrics.getMeterRegistry(this.applicationContext);
+        }
+        return this.meterRegistry;
+    }
+
+    /**
+     * 实例化 RpcAccessLogger, 所有服务共用
+     */
+    private RpcAccessLogger getRpcAccessLogger() {
+        if (this.rpcAccessLogger == null) {
+            this.rpcAccessLogger = registerBean(this.applicationContext, "rpcAccessLogger", RpcAccessLogger.class, getRpcProperties().getAccessLog(), getMeterRegistry());
+        }
+        return this.rpcAccessLogger;
+    }
+
     /**
      * 实例化 DirectExchange
      */
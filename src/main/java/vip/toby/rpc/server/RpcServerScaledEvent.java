@@ -0,0 +1,39 @@
+package vip.toby.rpc.server;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.io.Serial;
+
+/**
+ * RpcServerScaledEvent, RpcServerAutoscaler 调整消费者数量后发布
+ *
+ * @author toby
+ */
+@Getter
+public class RpcServerScaledEvent extends ApplicationEvent {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String rpcName;
+    private final int fromConsumers;
+    private final int toConsumers;
+    // 队列积压消息数
+    private final long queueDepth;
+    // 消费者利用率, 0 ~ 1
+    private final double utilization;
+    // 平均处理耗时(毫秒)
+    private final double latency;
+
+    RpcServerScaledEvent(Object source, String rpcName, int fromConsumers, int toConsumers, long queueDepth, double utilization, double latency) {
+        super(source);
+        this.rpcName = rpcName;
+        this.fromConsumers = fromConsumers;
+        this.toConsumers = toConsumers;
+        this.queueDepth = queueDepth;
+        this.utilization = utilization;
+        this.latency = latency;
+    }
+
+}
@@ -0,0 +1,88 @@
+package vip.toby.rpc.server;
+
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
+import org.springframework.beans.factory.DisposableBean;
+import vip.toby.rpc.codec.RpcBatchingStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * RpcServerVirtualThreadListener, 消费线程只负责分发, 每条消息在独立的虚拟线程中处理并 Ack
+ * <p>
+ * 并发数由 prefetch 和 Semaphore 共同限制, 达到上限时阻塞消费线程
+ *
+ * @author toby
+ */
+@Slf4j
+public class RpcServerVirtualThreadListener implements ChannelAwareMessageListener, DisposableBean {
+
+    private final String rpcName;
+    private final RpcServerHandler rpcServerHandler;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    // 批量消息的记录由同一个消费线程依次回调, 收齐后在一个虚拟线程中按顺序处理
+    private final ThreadLocal<List<Message>> batchFragments = ThreadLocal.withInitial(ArrayList::new);
+
+    RpcServerVirtualThreadListener(String rpcName, RpcServerHandler rpcServerHandler, int virtualThreadNum) {
+        this.rpcName = rpcName;
+        this.rpcServerHandler = rpcServerHandler;
+        this.permits = new Semaphore(virtualThreadNum);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("RpcServer-" + rpcName + "-", 0).factory());
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, Channel channel) throws InterruptedException {
+        final List<Message> messages;
+        final List<Message> fragments = this.batchFragments.get();
+        if (!fragments.isEmpty() && fragments.getFirst().getMessageProperties().getDeliveryTag() != message.getMessageProperties().getDeliveryTag()) {
+            // 上一条批量消息拆分到一半失败, 剩余记录由容器按失败处理, 不能拼到其他消息中
+            log.warn("RpcServer: {} Dropped {} Incomplete Batch Fragments! DeliveryTag: {}", this.rpcName, fragments.size(), fragments.getFirst().getMessageProperties().getDeliveryTag());
+            fragments.clear();
+        }
+        if (message.getMessageProperties().getHeader(RpcBatchingStrategy.BATCH_SIZE) != null) {
+            fragments.add(message);
+            if (!message.getMessageProperties().isLastInBatch()) {
+                return;
+            }
+            messages = List.copyOf(fragments);
+            fragments.clear();
+        } else {
+            messages = List.of(message);
+        }
+        this.permits.acquire();
+        try {
+            this.executor.execute(() -> {
+                try {
+                    for (Message m : messages) {
+                        this.rpcServerHandler.onMessage(m, channel);
+                    }
+                } catch (Exception e) {
+                    log.error("RpcServer: {} Exception!", this.rpcName);
+                    log.error(e.getMessage(), e);
+                } finally {
+                    this.permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 停止时等待处理中的消息完成
+     */
+    @Override
+    public void destroy() {
+        this.executor.close();
+    }
+
+}
@@ -0,0 +1,199 @@
+package vip.toby.rpc.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * RpcHash, XXH64 实现, 用于消息指纹, 计算过程不分配内存
+ *
+ * @author toby
+ */
+public final class RpcHash {
+
+    private final static long PRIME1 = 0x9E3779B185EBCA87L;
+    private final static long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private final static long PRIME3 = 0x165667B19E3779F9L;
+    private final static long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private final static long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private RpcHash() {
+    }
+
+    public static long xxHash64(byte[] bytes, long seed) {
+        return xxHash64(bytes, 0, bytes.length, seed);
+    }
+
+    public static long xxHash64(byte[] bytes, int offset, int length, long seed) {
+        final int end = offset + length;
+        int p = offset;
+        long hash;
+        if (length >= 32) {
+            long v1 = seed + PRIME1 + PRIME2;
+            long v2 = seed + PRIME2;
+            long v3 = seed;
+            long v4 = seed - PRIME1;
+            final int limit = end - 32;
+            do {
+                v1 = round(v1, (long) LONG.get(bytes, p));
+                v2 = round(v2, (long) LONG.get(bytes, p + 8));
+                v3 = round(v3, (long) LONG.get(bytes, p + 16));
+                v4 = round(v4, (long) LONG.get(bytes, p + 24));
+                p += 32;
+            } while (p <= limit);
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        return finish(hash + length, bytes, p, end);
+    }
+
+    /**
+     * 字符串的 64 位哈希, 逐个字符计算, 不分配内存
+     */
+    public static long hash(CharSequence value) {
+        long hash = PRIME5 + value.length();
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i) * PRIME1;
+            hash = Long.rotateLeft(hash, 11) * PRIME2;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 处理不足 32 字节的剩余部分
+     */
+    private static long finish(long hash, byte[] bytes, int p, int end) {
+        while (p + 8 <= end) {
+            hash ^= round(0, (long) LONG.get(bytes, p));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            p += 8;
+        }
+        if (p + 4 <= end) {
+            hash ^= ((int) INT.get(bytes, p) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            p += 4;
+        }
+        while (p < end) {
+            hash ^= (bytes[p] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            p++;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 64 位混淆, 使低位和高位都均匀分布
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long hash, long value) {
+        hash ^= round(0, value);
+        return hash * PRIME1 + PRIME4;
+    }
+
+    /**
+     * 流式 XXH64, 分多次写入的结果与一次写入全部内容相同; 非线程安全, reset 后可以复用
+     */
+    public static final class XxHash64 {
+
+        // 不足 32 字节的部分先缓存, 凑满后再计算
+        private final byte[] buffer = new byte[32];
+        private long seed;
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+        private long total;
+        private int buffered;
+
+        public XxHash64(long seed) {
+            reset(seed);
+        }
+
+        public void reset(long seed) {
+            this.seed = seed;
+            this.v1 = seed + PRIME1 + PRIME2;
+            this.v2 = seed + PRIME2;
+            this.v3 = seed;
+            this.v4 = seed - PRIME1;
+            this.total = 0;
+            this.buffered = 0;
+        }
+
+        public void update(byte b) {
+            this.total++;
+            this.buffer[this.buffered++] = b;
+            if (this.buffered == 32) {
+                stripe(this.buffer, 0);
+                this.buffered = 0;
+            }
+        }
+
+        public void update(byte[] bytes, int offset, int length) {
+            this.total += length;
+            if (this.buffered + length < 32) {
+                System.arraycopy(bytes, offset, this.buffer, this.buffered, length);
+                this.buffered += length;
+                return;
+            }
+            final int end = offset + length;
+            if (this.buffered > 0) {
+                final int fill = 32 - this.buffered;
+                System.arraycopy(bytes, offset, this.buffer, this.buffered, fill);
+                stripe(this.buffer, 0);
+                offset += fill;
+                this.buffered = 0;
+            }
+            while (offset + 32 <= end) {
+                stripe(bytes, offset);
+                offset += 32;
+            }
+            this.buffered = end - offset;
+            System.arraycopy(bytes, offset, this.buffer, 0, this.buffered);
+        }
+
+        public long digest() {
+            long hash;
+            if (this.total >= 32) {
+                hash = Long.rotateLeft(this.v1, 1) + Long.rotateLeft(this.v2, 7) + Long.rotateLeft(this.v3, 12) + Long.rotateLeft(this.v4, 18);
+                hash = merge(hash, this.v1);
+                hash = merge(hash, this.v2);
+                hash = merge(hash, this.v3);
+                hash = merge(hash, this.v4);
+            } else {
+                hash = this.seed + PRIME5;
+            }
+            return finish(hash + this.total, this.buffer, 0, this.buffered);
+        }
+
+        private void stripe(byte[] bytes, int p) {
+            this.v1 = round(this.v1, (long) LONG.get(bytes, p));
+            this.v2 = round(this.v2, (long) LONG.get(bytes, p + 8));
+            this.v3 = round(this.v3, (long) LONG.get(bytes, p + 16));
+            this.v4 = round(this.v4, (long) LONG.get(bytes, p + 24));
+        }
+
+    }
+
+}
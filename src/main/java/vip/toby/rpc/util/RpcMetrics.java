@@ -0,0 +1,142 @@
+package vip.toby.rpc.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+import vip.toby.rpc.entity.RpcStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RpcMetrics, 单个 rpcName 的 Micrometer 指标
+ * <p>
+ * Tag 只使用 rpcName、已声明的 command、RpcStatus 和固定的错误类型, 保证指标数量有限
+ *
+ * @author toby
+ */
+public class RpcMetrics {
+
+    public final static String CLIENT = "client";
+    public final static String SERVER = "server";
+
+    // 错误类型
+    public final static String TIMEOUT = "timeout";
+    public final static String NOT_FOUND = "not_found";
+    public final static String DUPLICATE = "duplicate";
+    public final static String INVALID = "invalid";
+    public final static String EXPIRED = "expired";
+    public final static String OVERLOADED = "overloaded";
+    public final static String SHED = "shed";
+    public final static String REJECTED = "rejected";
+
+    // 对冲请求结果
+    public final static String HEDGE_SENT = "sent";
+    public final static String HEDGE_WON = "won";
+    public final static String HEDGE_THROTTLED = "throttled";
+
+    private final String prefix;
+    private final String rpcName;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final DistributionSummary requestSize;
+    private final DistributionSummary responseSize;
+    private final Map<String, AtomicReferenceArray<Timer>> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+    private final Map<String, Counter[]> caches = new ConcurrentHashMap<>();
+    private final Map<String, Counter> coalesced = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> hedges = new ConcurrentHashMap<>();
+
+    public RpcMetrics(String side, String rpcName, MeterRegistry meterRegistry) {
+        this.prefix = "simple.rpc." + side;
+        this.rpcName = rpcName;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder(this.prefix + ".in.flight", this.inFlight, AtomicInteger::get).tag("rpcName", rpcName).register(meterRegistry);
+        this.requestSize = DistributionSummary.builder(this.prefix + ".request.size").baseUnit("bytes").tag("rpcName", rpcName).publishPercentileHistogram().register(meterRegistry);
+        this.responseSize = DistributionSummary.builder(this.prefix + ".response.size").baseUnit("bytes").tag("rpcName", rpcName).publishPercentileHistogram().register(meterRegistry);
+    }
+
+    /**
+     * 获取容器中的 MeterRegistry, 没有时使用全局 MeterRegistry; 只在引入 micrometer-core 时调用
+     */
+    public static MeterRegistry getMeterRegistry(BeanFactory beanFactory) {
+        return beanFactory.getBeanProvider(MeterRegistry.class).getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    public void begin() {
+        this.inFlight.incrementAndGet();
+    }
+
+    public void end() {
+        this.inFlight.decrementAndGet();
+    }
+
+    /**
+     * 记录一次调用耗时, command 必须为已声明的方法
+     */
+    public void record(String command, RpcStatus rpcStatus, long nanos) {
+        final AtomicReferenceArray<Timer> statusTimers = this.timers.computeIfAbsent(command, k -> new AtomicReferenceArray<>(RpcStatus.values().length));
+        Timer timer = statusTimers.get(rpcStatus.ordinal());
+        if (timer == null) {
+            // 注册是幂等的, 并发时拿到的是同一个 Timer
+            timer = Timer.builder(this.prefix + ".requests")
+                    .tag("rpcName", this.rpcName)
+                    .tag("command", command)
+                    .tag("status", rpcStatus.name())
+                    .publishPercentileHistogram()
+                    .register(this.meterRegistry);
+            statusTimers.set(rpcStatus.ordinal(), timer);
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 错误计数, type 为 TIMEOUT、NOT_FOUND、DUPLICATE、INVALID、EXPIRED、OVERLOADED、SHED 或者 REJECTED
+     */
+    public void error(String type) {
+        this.errors.computeIfAbsent(type, k -> Counter.builder(this.prefix + ".errors").tag("rpcName", this.rpcName).tag("type", k).register(this.meterRegistry)).increment();
+    }
+
+    /**
+     * 客户端响应缓存命中计数, command 必须为已声明的方法
+     */
+    public void cache(String command, boolean hit) {
+        final Counter[] counters = this.caches.computeIfAbsent(command, k -> new Counter[]{
+                Counter.builder(this.prefix + ".cache").tag("rpcName", this.rpcName).tag("command", k).tag("result", "hit").register(this.meterRegistry),
+                Counter.builder(this.prefix + ".cache").tag("rpcName", this.rpcName).tag("command", k).tag("result", "miss").register(this.meterRegistry)
+        });
+        counters[hit ? 0 : 1].increment();
+    }
+
+    /**
+     * 客户端合并到进行中请求的调用计数, command 必须为已声明的方法
+     */
+    public void coalesced(String command) {
+        this.coalesced.computeIfAbsent(command, k -> Counter.builder(this.prefix + ".coalesced").tag("rpcName", this.rpcName).tag("command", k).register(this.meterRegistry)).increment();
+    }
+
+    /**
+     * 客户端对冲请求计数, result 为 HEDGE_SENT、HEDGE_WON 或者 HEDGE_THROTTLED
+     */
+    public void hedge(String command, String result) {
+        this.hedges.computeIfAbsent(command, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(result, k -> Counter.builder(this.prefix + ".hedges").tag("rpcName", this.rpcName).tag("command", command).tag("result", k).register(this.meterRegistry))
+                .increment();
+    }
+
+    public void requestSize(int bytes) {
+        this.requestSize.record(bytes);
+    }
+
+    public void responseSize(int bytes) {
+        this.responseSize.record(bytes);
+    }
+
+}
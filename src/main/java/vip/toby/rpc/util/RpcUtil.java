@@ -1,11 +1,14 @@
 package vip.toby.rpc.util;
 
+import org.springframework.util.ClassUtils;
 import vip.toby.rpc.entity.RpcType;
 
 import java.util.Objects;
 
 public class RpcUtil {
 
+    private final static boolean MICROMETER_PRESENT = ClassUtils.isPresent("io.micrometer.core.instrument.MeterRegistry", RpcUtil.class.getClassLoader());
+
     public static String getRpcName(RpcType rpcType, String value) {
         switch (rpcType) {
             case ASYNC -> {
@@ -35,4 +38,11 @@ public class RpcUtil {
         return rpcName + "." + partition;
     }
 
+    /**
+     * micrometer-core 为可选依赖, 未引入时不记录指标
+     */
+    public static boolean micrometerPresent() {
+        return MICROMETER_PRESENT;
+    }
+
 }
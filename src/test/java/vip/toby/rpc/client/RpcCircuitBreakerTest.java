@@ -0,0 +1,140 @@
+package vip.toby.rpc.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import vip.toby.rpc.annotation.RpcClient;
+import vip.toby.rpc.entity.RpcCircuitState;
+import vip.toby.rpc.entity.RpcStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcCircuitBreaker 的状态切换测试
+ *
+ * @author toby
+ */
+class RpcCircuitBreakerTest {
+
+    private final List<RpcCircuitState> transitions = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void opensAtFailureRate() {
+        final RpcCircuitBreaker circuitBreaker = circuitBreaker(1, 1000);
+        circuitBreaker.onResult(circuitBreaker.tryAcquire(), RpcStatus.OK);
+        circuitBreaker.onResult(circuitBreaker.tryAcquire(), RpcStatus.NOT_FOUND);
+        circuitBreaker.onResult(circuitBreaker.tryAcquire(), RpcStatus.UNAVAILABLE);
+        assertTrue(this.transitions.isEmpty());
+        circuitBreaker.onResult(circuitBreaker.tryAcquire(), RpcStatus.OVERLOADED);
+        assertEquals(List.of(RpcCircuitState.OPEN), this.transitions);
+        assertNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenRecovers() throws InterruptedException {
+        final RpcCircuitBreaker circuitBreaker = circuitBreaker(2, 1000);
+        open(circuitBreaker);
+        Thread.sleep(60);
+        final RpcCircuitBreaker.Phase first = circuitBreaker.tryAcquire();
+        final RpcCircuitBreaker.Phase second = circuitBreaker.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        // 试探次数已用完
+        assertNull(circuitBreaker.tryAcquire());
+        circuitBreaker.onResult(first, RpcStatus.OK);
+        circuitBreaker.onResult(second, RpcStatus.OK);
+        assertEquals(List.of(RpcCircuitState.OPEN, RpcCircuitState.HALF_OPEN, RpcCircuitState.CLOSED), this.transitions);
+        assertNotNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenFailureReopens() throws InterruptedException {
+        final RpcCircuitBreaker circuitBreaker = circuitBreaker(2, 1000);
+        open(circuitBreaker);
+        Thread.sleep(60);
+        circuitBreaker.onResult(circuitBreaker.tryAcquire(), RpcStatus.FAIL);
+        assertEquals(List.of(RpcCircuitState.OPEN, RpcCircuitState.HALF_OPEN, RpcCircuitState.OPEN), this.transitions);
+        assertNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void staleResultsAreIgnored() throws InterruptedException {
+        final RpcCircuitBreaker circuitBreaker = circuitBreaker(1, 1000);
+        // 熔断前发出的调用
+        final RpcCircuitBreaker.Phase closed = circuitBreaker.tryAcquire();
+        open(circuitBreaker);
+        Thread.sleep(60);
+        final RpcCircuitBreaker.Phase probe = circuitBreaker.tryAcquire();
+        assertNotNull(probe);
+        // 不计为试探调用
+        circuitBreaker.onResult(closed, RpcStatus.OK);
+        circuitBreaker.onResult(closed, RpcStatus.FAIL);
+        assertEquals(List.of(RpcCircuitState.OPEN, RpcCircuitState.HALF_OPEN), this.transitions);
+        circuitBreaker.onResult(probe, RpcStatus.OK);
+        assertEquals(List.of(RpcCircuitState.OPEN, RpcCircuitState.HALF_OPEN, RpcCircuitState.CLOSED), this.transitions);
+        // 恢复后旧的试探结果也不计入
+        circuitBreaker.onResult(probe, RpcStatus.FAIL);
+        assertEquals(3, this.transitions.size());
+    }
+
+    @Test
+    void leakedProbesReopen() throws InterruptedException {
+        final RpcCircuitBreaker circuitBreaker = circuitBreaker(1, 100);
+        open(circuitBreaker);
+        Thread.sleep(60);
+        // 试探调用一直没有返回结果
+        assertNotNull(circuitBreaker.tryAcquire());
+        assertNull(circuitBreaker.tryAcquire());
+        Thread.sleep(120);
+        assertNull(circuitBreaker.tryAcquire());
+        assertEquals(List.of(RpcCircuitState.OPEN, RpcCircuitState.HALF_OPEN, RpcCircuitState.OPEN), this.transitions);
+        Thread.sleep(60);
+        assertNotNull(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    void invalidConfig() {
+        assertThrows(RuntimeException.class, () -> circuitBreakers(NegativeFailureRate.class));
+        assertThrows(RuntimeException.class, () -> circuitBreakers(TooLargeFailureRate.class));
+        assertThrows(RuntimeException.class, () -> circuitBreakers(ZeroMinCalls.class));
+        assertNotNull(circuitBreakers(Valid.class).get("get"));
+    }
+
+    /**
+     * 失败率 0.5, 最少 4 次调用, 熔断 50 毫秒
+     */
+    private RpcCircuitBreaker circuitBreaker(int halfOpenCalls, long probeTimeout) {
+        return new RpcCircuitBreaker("test", null, 0.5, 10000, 4, 50, halfOpenCalls, probeTimeout, event -> this.transitions.add(((RpcCircuitBreakerEvent) event).getToState()), new SimpleMeterRegistry());
+    }
+
+    private static void open(RpcCircuitBreaker circuitBreaker) {
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onResult(circuitBreaker.tryAcquire(), RpcStatus.FAIL);
+        }
+    }
+
+    private static RpcCircuitBreakers circuitBreakers(Class<?> rpcClientInterface) {
+        return new RpcCircuitBreakers("test", rpcClientInterface.getAnnotation(RpcClient.class), 1000, event -> {
+        }, new SimpleMeterRegistry());
+    }
+
+    @RpcClient(name = "test", circuitBreakerFailureRate = -0.5)
+    private interface NegativeFailureRate {
+    }
+
+    @RpcClient(name = "test", circuitBreakerFailureRate = 1.5)
+    private interface TooLargeFailureRate {
+    }
+
+    @RpcClient(name = "test", circuitBreakerFailureRate = 0.5, circuitBreakerMinCalls = 0)
+    private interface ZeroMinCalls {
+    }
+
+    @RpcClient(name = "test", circuitBreakerFailureRate = 0.5)
+    private interface Valid {
+    }
+
+}
@@ -0,0 +1,96 @@
+package vip.toby.rpc.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import vip.toby.rpc.entity.RpcConfirmMode;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcConfirmWindow 的窗口限制和确认结果测试
+ *
+ * @author toby
+ */
+class RpcConfirmWindowTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void blockWaitsThenFails() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 1, RpcConfirmMode.BLOCK, 50, this.meterRegistry);
+        final CorrelationData first = new CorrelationData();
+        assertNotNull(confirmWindow.acquire(first));
+        final long start = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> confirmWindow.acquire(new CorrelationData()));
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+        // Broker Ack 后释放窗口
+        first.getFuture().complete(new CorrelationData.Confirm(true, null));
+        assertNotNull(confirmWindow.acquire(new CorrelationData()));
+    }
+
+    @Test
+    void failFastThrows() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 1, RpcConfirmMode.FAIL_FAST, 60000, this.meterRegistry);
+        assertNotNull(confirmWindow.acquire(new CorrelationData()));
+        final long start = System.nanoTime();
+        assertThrows(RuntimeException.class, () -> confirmWindow.acquire(new CorrelationData()));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+    }
+
+    @Test
+    void shedDrops() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 1, RpcConfirmMode.SHED, 60000, this.meterRegistry);
+        assertNotNull(confirmWindow.acquire(new CorrelationData()));
+        assertNull(confirmWindow.acquire(new CorrelationData()));
+        assertEquals(1, this.meterRegistry.get("simple.rpc.client.confirm.shed").counter().count());
+    }
+
+    @Test
+    void nackReleasesPermit() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 1, RpcConfirmMode.FAIL_FAST, 60000, this.meterRegistry);
+        final CorrelationData correlationData = new CorrelationData();
+        final CompletableFuture<Void> confirm = confirmWindow.acquire(correlationData);
+        correlationData.getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        assertTrue(confirm.isCompletedExceptionally());
+        assertEquals(1, this.meterRegistry.get("simple.rpc.client.confirm.nack").counter().count());
+        assertNotNull(confirmWindow.acquire(new CorrelationData()));
+    }
+
+    @Test
+    void exceptionReleasesPermit() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 1, RpcConfirmMode.FAIL_FAST, 60000, this.meterRegistry);
+        final CorrelationData correlationData = new CorrelationData();
+        final CompletableFuture<Void> confirm = confirmWindow.acquire(correlationData);
+        correlationData.getFuture().completeExceptionally(new RuntimeException("closed"));
+        assertTrue(confirm.isCompletedExceptionally());
+        assertEquals(1, this.meterRegistry.get("simple.rpc.client.confirm.nack").counter().count());
+        assertNotNull(confirmWindow.acquire(new CorrelationData()));
+    }
+
+    @Test
+    void inFlightGauge() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 0, RpcConfirmMode.BLOCK, 60000, this.meterRegistry);
+        final CorrelationData first = new CorrelationData();
+        final CorrelationData second = new CorrelationData();
+        confirmWindow.acquire(first);
+        confirmWindow.acquire(second);
+        assertEquals(2, this.meterRegistry.get("simple.rpc.client.confirm.in.flight").gauge().value());
+        first.getFuture().complete(new CorrelationData.Confirm(true, null));
+        second.getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        assertEquals(0, this.meterRegistry.get("simple.rpc.client.confirm.in.flight").gauge().value());
+    }
+
+    @Test
+    void withoutMetrics() {
+        final RpcConfirmWindow confirmWindow = new RpcConfirmWindow("test", 1, RpcConfirmMode.SHED, 60000, null);
+        final CorrelationData correlationData = new CorrelationData();
+        assertNotNull(confirmWindow.acquire(correlationData));
+        assertNull(confirmWindow.acquire(new CorrelationData()));
+        correlationData.getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        assertNotNull(confirmWindow.acquire(new CorrelationData()));
+    }
+
+}
@@ -0,0 +1,118 @@
+package vip.toby.rpc.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcHedgePolicy 的令牌和对冲延迟测试
+ *
+ * @author toby
+ */
+class RpcHedgePolicyTest {
+
+    @Test
+    void hedgesNeverExceedFirstRequests() {
+        final RpcHedgePolicy hedgePolicy = new RpcHedgePolicy(10, 1);
+        assertFalse(hedgePolicy.withdraw());
+        for (int i = 0; i < 3; i++) {
+            hedgePolicy.deposit();
+        }
+        assertTrue(hedgePolicy.withdraw());
+        assertTrue(hedgePolicy.withdraw());
+        assertTrue(hedgePolicy.withdraw());
+        assertFalse(hedgePolicy.withdraw());
+    }
+
+    @Test
+    void budgetIsCapped() {
+        final RpcHedgePolicy hedgePolicy = new RpcHedgePolicy(10, 1);
+        for (int i = 0; i < 1000; i++) {
+            hedgePolicy.deposit();
+        }
+        int withdrawn = 0;
+        while (hedgePolicy.withdraw()) {
+            withdrawn++;
+        }
+        assertEquals(100, withdrawn);
+    }
+
+    @Test
+    void concurrentHedgesNeverExceedFirstRequests() throws InterruptedException {
+        final RpcHedgePolicy hedgePolicy = new RpcHedgePolicy(10, 1);
+        final AtomicInteger withdrawn = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<>();
+        final int deposits = 50;
+        for (int i = 0; i < 8; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < deposits; j++) {
+                    hedgePolicy.deposit();
+                    // 每个首次请求都尝试多次对冲
+                    for (int k = 0; k < 3; k++) {
+                        if (hedgePolicy.withdraw()) {
+                            withdrawn.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8 * deposits, withdrawn.get());
+        assertFalse(hedgePolicy.withdraw());
+    }
+
+    @Test
+    void fixedDelay() {
+        assertEquals(50, new RpcHedgePolicy(50, 1).getDelay());
+    }
+
+    @Test
+    void p95Refreshes() {
+        final RpcHedgePolicy hedgePolicy = new RpcHedgePolicy(0, 1);
+        // 样本不足时不对冲
+        for (int i = 1; i < 32; i++) {
+            hedgePolicy.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertEquals(0, hedgePolicy.getDelay());
+        hedgePolicy.record(TimeUnit.MILLISECONDS.toNanos(32));
+        assertEquals(31, hedgePolicy.getDelay());
+        // 耗时变长后下一次刷新时更新
+        for (int i = 0; i < 31; i++) {
+            hedgePolicy.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(31, hedgePolicy.getDelay());
+        hedgePolicy.record(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100, hedgePolicy.getDelay());
+    }
+
+    @Test
+    void p95UsesRecentSamples() {
+        final RpcHedgePolicy hedgePolicy = new RpcHedgePolicy(0, 1);
+        for (int i = 0; i < 128; i++) {
+            hedgePolicy.record(TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        assertEquals(500, hedgePolicy.getDelay());
+        // 旧的样本被覆盖
+        for (int i = 0; i < 128; i++) {
+            hedgePolicy.record(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        assertEquals(5, hedgePolicy.getDelay());
+    }
+
+    @Test
+    void subMillisecondLatency() {
+        final RpcHedgePolicy hedgePolicy = new RpcHedgePolicy(0, 1);
+        for (int i = 0; i < 32; i++) {
+            hedgePolicy.record(TimeUnit.MICROSECONDS.toNanos(200));
+        }
+        assertEquals(1, hedgePolicy.getDelay());
+    }
+
+}
@@ -0,0 +1,111 @@
+package vip.toby.rpc.client;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpReplyTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import vip.toby.rpc.codec.RpcCodec;
+import vip.toby.rpc.codec.RpcCodecs;
+import vip.toby.rpc.entity.R;
+import vip.toby.rpc.entity.RCode;
+import vip.toby.rpc.entity.RpcResult;
+import vip.toby.rpc.entity.RpcStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcHedgeRace 的竞争结果测试, 消息体为 duplicate 时视为拒绝回复
+ *
+ * @author toby
+ */
+class RpcHedgeRaceTest {
+
+    private final AtomicInteger hedgeWon = new AtomicInteger();
+    private final RpcHedgeRace race = new RpcHedgeRace(new RpcHedgePolicy(10, 1), message -> "duplicate".equals(new String(message.getBody())));
+
+    @Test
+    void duplicateDoesNotWin() {
+        final CompletableFuture<Message> first = attempt(false);
+        final CompletableFuture<Message> hedge = attempt(true);
+        // 首次请求还在执行, 对冲请求被识别为重复调用, 先回复
+        hedge.complete(message("duplicate"));
+        assertFalse(this.race.getResult().isDone());
+        final Message ok = message("ok");
+        first.complete(ok);
+        assertSame(ok, this.race.getResult().join());
+        assertEquals(0, this.hedgeWon.get());
+    }
+
+    @Test
+    void hedgeWins() {
+        attempt(false);
+        final CompletableFuture<Message> hedge = attempt(true);
+        final Message ok = message("ok");
+        hedge.complete(ok);
+        assertSame(ok, this.race.getResult().join());
+        assertEquals(1, this.hedgeWon.get());
+    }
+
+    @Test
+    void lastRejectionReturned() {
+        final CompletableFuture<Message> first = attempt(false);
+        final CompletableFuture<Message> hedge = attempt(true);
+        hedge.complete(message("duplicate"));
+        final Message rejected = message("duplicate");
+        first.complete(rejected);
+        assertSame(rejected, this.race.getResult().join());
+    }
+
+    @Test
+    void firstTimeoutFailsRace() {
+        final CompletableFuture<Message> first = attempt(false);
+        attempt(true);
+        first.completeExceptionally(new AmqpReplyTimeoutException("timeout", null));
+        assertTrue(this.race.getResult().isCompletedExceptionally());
+    }
+
+    @Test
+    void hedgeFailureIgnored() {
+        final CompletableFuture<Message> first = attempt(false);
+        final CompletableFuture<Message> hedge = attempt(true);
+        hedge.completeExceptionally(new RuntimeException("closed"));
+        assertFalse(this.race.getResult().isDone());
+        final Message ok = message("ok");
+        first.complete(ok);
+        assertSame(ok, this.race.getResult().join());
+    }
+
+    @Test
+    void allFailed() {
+        final CompletableFuture<Message> first = attempt(false);
+        final CompletableFuture<Message> hedge = attempt(true);
+        hedge.complete(message("duplicate"));
+        first.completeExceptionally(new RuntimeException("closed"));
+        assertTrue(this.race.getResult().isCompletedExceptionally());
+    }
+
+    @Test
+    void rejections() {
+        final RpcCodec rpcCodec = RpcCodecs.get(RpcCodec.JSONB);
+        assertTrue(RpcHedgeRace.isRejection(rpcCodec.decodeReply(rpcCodec.encodeReply(RpcStatus.OK, R.build(RCode.DUPLICATE)), Object.class)));
+        assertTrue(RpcHedgeRace.isRejection(rpcCodec.decodeReply(rpcCodec.encodeReply(RpcStatus.OVERLOADED, null), Object.class)));
+        assertTrue(RpcHedgeRace.isRejection(RpcResult.build(RpcStatus.CIRCUIT_OPEN)));
+        assertFalse(RpcHedgeRace.isRejection(rpcCodec.decodeReply(rpcCodec.encodeReply(RpcStatus.OK, R.ok()), Object.class)));
+        assertFalse(RpcHedgeRace.isRejection(rpcCodec.decodeReply(rpcCodec.encodeReply(RpcStatus.OK, R.fail()), Object.class)));
+        assertFalse(RpcHedgeRace.isRejection(rpcCodec.decodeReply(rpcCodec.encodeReply(RpcStatus.NOT_FOUND, null), Object.class)));
+    }
+
+    private CompletableFuture<Message> attempt(boolean hedge) {
+        final CompletableFuture<Message> reply = new CompletableFuture<>();
+        this.race.attempt(() -> reply, hedge, this.hedgeWon::incrementAndGet);
+        return reply;
+    }
+
+    private static Message message(String body) {
+        return new Message(body.getBytes(), new MessageProperties());
+    }
+
+}
@@ -0,0 +1,39 @@
+package vip.toby.rpc.client;
+
+import com.rabbitmq.client.ShutdownSignalException;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.AmqpIOException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * RpcSenderFailureRecorder 的异常分类测试
+ *
+ * @author toby
+ */
+class RpcSenderFailureRecorderTest {
+
+    @Test
+    void connectionFailure() {
+        assertEquals(RpcSenderFailureRecorder.Failure.CONNECTION, RpcSenderFailureRecorder.classify(new AmqpConnectException(new ConnectException())));
+        assertEquals(RpcSenderFailureRecorder.Failure.CONNECTION, RpcSenderFailureRecorder.classify(new ShutdownSignalException(true, false, null, null)));
+    }
+
+    @Test
+    void channelFailure() {
+        assertEquals(RpcSenderFailureRecorder.Failure.CHANNEL, RpcSenderFailureRecorder.classify(new ShutdownSignalException(false, false, null, null)));
+        // 异步调用的异常包在 CompletionException 里
+        assertEquals(RpcSenderFailureRecorder.Failure.CHANNEL, RpcSenderFailureRecorder.classify(new CompletionException(new AmqpIOException(new IOException()))));
+    }
+
+    @Test
+    void otherFailure() {
+        assertEquals(RpcSenderFailureRecorder.Failure.OTHER, RpcSenderFailureRecorder.classify(new IllegalArgumentException()));
+    }
+
+}
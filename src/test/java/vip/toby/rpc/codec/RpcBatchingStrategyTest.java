@@ -0,0 +1,116 @@
+package vip.toby.rpc.codec;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.listener.ListenerExecutionFailedException;
+import org.springframework.amqp.rabbit.batch.MessageBatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcBatchingStrategy 的分帧测试
+ *
+ * @author toby
+ */
+class RpcBatchingStrategyTest {
+
+    @Test
+    void roundTrip() {
+        final RpcBatchingStrategy strategy = new RpcBatchingStrategy(3, 1000);
+        assertNull(strategy.addToBatch("simple.rpc.async", "order", message("a", "deflate", "first")));
+        assertNull(strategy.addToBatch("simple.rpc.async", "order", message(null, null, "")));
+        final MessageBatch batch = strategy.addToBatch("simple.rpc.async", "order", message("中文", null, "third"));
+        assertNotNull(batch);
+        assertEquals("simple.rpc.async", batch.exchange());
+        assertEquals("order", batch.routingKey());
+        assertEquals(3, (Integer) batch.message().getMessageProperties().getHeader(RpcBatchingStrategy.BATCH_SIZE));
+        assertEquals("application/json", batch.message().getMessageProperties().getContentType());
+
+        final List<Message> fragments = deBatch(batch.message());
+        assertEquals(3, fragments.size());
+        assertFragment(fragments.get(0), "a", "deflate", "first");
+        assertFragment(fragments.get(1), null, null, "");
+        assertFragment(fragments.get(2), "中文", null, "third");
+        // 只有最后一条负责 Ack
+        assertFalse(fragments.get(0).getMessageProperties().isLastInBatch());
+        assertFalse(fragments.get(1).getMessageProperties().isLastInBatch());
+        assertTrue(fragments.get(2).getMessageProperties().isLastInBatch());
+    }
+
+    @Test
+    void batchesPerRoutingKey() {
+        final RpcBatchingStrategy strategy = new RpcBatchingStrategy(2, 1000);
+        assertNull(strategy.addToBatch("simple.rpc.async", "order", message("1", null, "1")));
+        assertNull(strategy.addToBatch("simple.rpc.async", "user", message("2", null, "2")));
+        assertNotNull(strategy.nextRelease());
+        final MessageBatch order = strategy.addToBatch("simple.rpc.async", "order", message("3", null, "3"));
+        assertNotNull(order);
+        assertEquals(Arrays.asList("1", "3"), deBatch(order.message()).stream().map(m -> m.getMessageProperties().getCorrelationId()).toList());
+
+        final Collection<MessageBatch> released = strategy.releaseBatches();
+        assertEquals(1, released.size());
+        final MessageBatch user = released.iterator().next();
+        assertEquals("user", user.routingKey());
+        assertFragment(deBatch(user.message()).getFirst(), "2", null, "2");
+        assertNull(strategy.nextRelease());
+        assertTrue(strategy.releaseBatches().isEmpty());
+    }
+
+    @Test
+    void canDebatchOnlyBatchMessages() {
+        final RpcBatchingStrategy strategy = new RpcBatchingStrategy();
+        assertFalse(strategy.canDebatch(new MessageProperties()));
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setHeader(RpcBatchingStrategy.BATCH_SIZE, 1);
+        assertTrue(strategy.canDebatch(messageProperties));
+    }
+
+    @Test
+    void truncatedBatchFails() {
+        final RpcBatchingStrategy strategy = new RpcBatchingStrategy(1, 1000);
+        final Message batch = strategy.addToBatch("simple.rpc.async", "order", message("a", null, "payload")).message();
+        final byte[] body = batch.getBody();
+        final Message truncated = new Message(Arrays.copyOf(body, body.length - 1), batch.getMessageProperties());
+        final List<Message> fragments = new ArrayList<>();
+        assertThrows(ListenerExecutionFailedException.class, () -> new RpcBatchingStrategy().deBatch(truncated, fragments::add));
+        // 格式错误时不交付任何记录
+        assertTrue(fragments.isEmpty());
+    }
+
+    @Test
+    void negativeLengthFails() {
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setHeader(RpcBatchingStrategy.BATCH_SIZE, 1);
+        final Message corrupted = new Message(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -2}, messageProperties);
+        assertThrows(ListenerExecutionFailedException.class, () -> new RpcBatchingStrategy().deBatch(corrupted, m -> {
+        }));
+    }
+
+    private static Message message(String correlationId, String contentEncoding, String body) {
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType("application/json");
+        messageProperties.setCorrelationId(correlationId);
+        messageProperties.setContentEncoding(contentEncoding);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), messageProperties);
+    }
+
+    private static List<Message> deBatch(Message message) {
+        final List<Message> fragments = new ArrayList<>();
+        new RpcBatchingStrategy().deBatch(message, fragments::add);
+        return fragments;
+    }
+
+    private static void assertFragment(Message fragment, String correlationId, String contentEncoding, String body) {
+        assertEquals(correlationId, fragment.getMessageProperties().getCorrelationId());
+        assertEquals(contentEncoding, fragment.getMessageProperties().getContentEncoding());
+        assertEquals(body, new String(fragment.getBody(), StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,71 @@
+package vip.toby.rpc.server;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+import vip.toby.rpc.entity.RpcRequest;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcAccessLogger 的参数渲染测试
+ *
+ * @author toby
+ */
+class RpcAccessLoggerTest {
+
+    @Test
+    void shortPayloadMatchesJson() {
+        final JSONObject data = new JSONObject();
+        data.put("id", 1);
+        data.put("name", "a\"b");
+        data.put("tags", List.of("x", 2.5, true));
+        data.put("ids", new long[]{1, 2});
+        data.put("empty", null);
+        final RpcRequest rpcRequest = new RpcRequest("get", data);
+        assertEquals(rpcRequest.toString(), RpcAccessLogger.payload(rpcRequest, 1000).toString());
+    }
+
+    @Test
+    void longPayloadIsTruncated() {
+        final JSONObject data = new JSONObject();
+        data.put("text", "x".repeat(100000));
+        final String text = RpcAccessLogger.payload(new RpcRequest("get", data), 50).toString();
+        assertEquals(50 + "...(truncated)".length(), text.length());
+        assertTrue(text.startsWith("{\"command\":\"get\",\"data\":{\"text\":\"xxx"));
+        assertTrue(text.endsWith("...(truncated)"));
+    }
+
+    @Test
+    void renderingStopsAtLimit() {
+        // 超过上限后不再访问剩余元素
+        final AtomicInteger rendered = new AtomicInteger();
+        final List<Object> elements = new AbstractList<>() {
+
+            @Override
+            public Object get(int index) {
+                rendered.incrementAndGet();
+                return index;
+            }
+
+            @Override
+            public int size() {
+                return 1000000;
+            }
+
+        };
+        final String text = RpcAccessLogger.payload(elements, 20).toString();
+        assertTrue(text.startsWith("[0,1,2,3,4,5,6,7,8,9"));
+        assertTrue(rendered.get() < 20);
+    }
+
+    @Test
+    void unlimitedPayload() {
+        assertNull(RpcAccessLogger.payload(null, 10));
+        assertEquals("abc", RpcAccessLogger.payload("abc", 0).toString());
+    }
+
+}
@@ -0,0 +1,118 @@
+package vip.toby.rpc.server;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcAckCoalescer 的合并 Ack 测试
+ *
+ * @author toby
+ */
+class RpcAckCoalescerTest {
+
+    @Test
+    void outOfOrderCompletion() {
+        final List<String> acks = Collections.synchronizedList(new ArrayList<>());
+        final Channel channel = channel(acks);
+        final RpcAckCoalescer coalescer = new RpcAckCoalescer("test", 3, 60000);
+        try {
+            coalescer.complete(channel, 3);
+            coalescer.complete(channel, 1);
+            assertTrue(acks.isEmpty());
+            coalescer.complete(channel, 2);
+            assertEquals(List.of("3+"), acks);
+        } finally {
+            coalescer.destroy();
+        }
+    }
+
+    @Test
+    void gapHoldsBackAck() {
+        final List<String> acks = Collections.synchronizedList(new ArrayList<>());
+        final Channel channel = channel(acks);
+        final RpcAckCoalescer coalescer = new RpcAckCoalescer("test", 3, 60000);
+        coalescer.complete(channel, 1);
+        coalescer.complete(channel, 3);
+        coalescer.complete(channel, 4);
+        // 2 未完成, 只能 Ack 到 1
+        assertEquals(List.of("1+"), acks);
+        coalescer.complete(channel, 2);
+        assertEquals(List.of("1+"), acks);
+        // 停止时 Ack 所有已完成的消息
+        coalescer.destroy();
+        assertEquals(List.of("1+", "4+"), acks);
+        // 停止后完成的消息直接 Ack
+        coalescer.complete(channel, 5);
+        assertEquals(List.of("1+", "4+", "5+"), acks);
+    }
+
+    @Test
+    void stallFallback() throws InterruptedException {
+        final List<String> acks = Collections.synchronizedList(new ArrayList<>());
+        final Channel channel = channel(acks);
+        final RpcAckCoalescer coalescer = new RpcAckCoalescer("test", 1, 10);
+        try {
+            coalescer.complete(channel, 2);
+            coalescer.complete(channel, 3);
+            assertTrue(acks.isEmpty());
+            // 1 一直未完成, 连续段停滞后逐条 Ack 之后已完成的消息
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (acks.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of("2", "3"), acks);
+            // 1 完成后只 Ack 1, 不会重复 Ack 已逐条 Ack 的消息
+            coalescer.complete(channel, 1);
+            assertEquals(List.of("2", "3", "1+"), acks);
+            coalescer.complete(channel, 4);
+            assertEquals(List.of("2", "3", "1+", "4+"), acks);
+        } finally {
+            coalescer.destroy();
+        }
+    }
+
+    @Test
+    void tagCompaction() {
+        final List<String> acks = Collections.synchronizedList(new ArrayList<>());
+        final Channel channel = channel(acks);
+        final RpcAckCoalescer coalescer = new RpcAckCoalescer("test", 5001, 60000);
+        for (long deliveryTag = 1; deliveryTag < 5000; deliveryTag++) {
+            coalescer.complete(channel, deliveryTag);
+        }
+        coalescer.complete(channel, 5001);
+        assertTrue(acks.isEmpty());
+        coalescer.complete(channel, 5000);
+        assertEquals(List.of("5001+"), acks);
+        // 压缩后已 Ack 的 deliveryTag 再次完成时忽略
+        coalescer.complete(channel, 10);
+        coalescer.complete(channel, 5003);
+        coalescer.complete(channel, 5002);
+        coalescer.destroy();
+        assertEquals(List.of("5001+", "5003+"), acks);
+    }
+
+    /**
+     * 记录 basicAck 调用, multiple=true 时以 + 结尾
+     */
+    private static Channel channel(List<String> acks) {
+        return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "basicAck" -> {
+                acks.add(args[0] + ((Boolean) args[1] ? "+" : ""));
+                yield null;
+            }
+            case "isOpen" -> true;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "Channel";
+            default -> throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+}
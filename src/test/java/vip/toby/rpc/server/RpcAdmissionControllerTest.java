@@ -0,0 +1,87 @@
+package vip.toby.rpc.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcAdmissionController 的过载判断测试
+ *
+ * @author toby
+ */
+class RpcAdmissionControllerTest {
+
+    @Test
+    void admitsBelowTarget() {
+        final RpcAdmissionController controller = new RpcAdmissionController(10, 50, 0);
+        assertTrue(controller.admit(System.currentTimeMillis(), true, 0, 1));
+        assertTrue(controller.admit(0, false, 0, 1));
+    }
+
+    @Test
+    void overloadedThenRecovers() throws InterruptedException {
+        final RpcAdmissionController controller = new RpcAdmissionController(10, 50, 0);
+        // 排队时间持续超过 target, interval 后开始拒绝
+        assertTrue(overload(controller, true));
+        assertFalse(controller.admit(System.currentTimeMillis() - 100, true, 0, 1));
+        // 排队时间回到 target 以内后恢复
+        assertTrue(controller.admit(System.currentTimeMillis(), true, 0, 1));
+        assertTrue(controller.admit(System.currentTimeMillis() - 100, true, 0, 1));
+    }
+
+    @Test
+    void skewedClientRecoversWhenIdle() throws InterruptedException {
+        final RpcAdmissionController controller = new RpcAdmissionController(10, 50, 0);
+        // 客户端时钟落后, 所有请求看起来都排队很久
+        assertTrue(overload(controller, false));
+        assertFalse(controller.admit(System.currentTimeMillis() - 10000, false, 0, 1));
+        // 空闲超过 target, 队列已经排空
+        Thread.sleep(30);
+        assertTrue(controller.admit(System.currentTimeMillis() - 10000, false, 0, 0));
+    }
+
+    @Test
+    void clockSkewAllowance() throws InterruptedException {
+        final RpcAdmissionController controller = new RpcAdmissionController(10, 50, 1000);
+        final long end = System.currentTimeMillis() + 100;
+        while (System.currentTimeMillis() < end) {
+            // 客户端时钟落后 500 毫秒
+            assertTrue(controller.admit(System.currentTimeMillis() - 500, false, 0, 1));
+            Thread.sleep(5);
+        }
+        // Broker 时钟不减去偏差
+        assertTrue(overload(controller, true));
+    }
+
+    @Test
+    void deadline() {
+        final RpcAdmissionController strict = new RpcAdmissionController(10, 50, 0);
+        final RpcAdmissionController tolerant = new RpcAdmissionController(10, 50, 1000);
+        for (int i = 0; i < 20; i++) {
+            strict.record(TimeUnit.MILLISECONDS.toNanos(100));
+            tolerant.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        final long now = System.currentTimeMillis();
+        // 平均耗时约 100 毫秒, 截止时间前无法完成
+        assertFalse(strict.admit(0, false, now + 10, 1));
+        assertTrue(strict.admit(0, false, now + 1000, 1));
+        assertTrue(tolerant.admit(0, false, now + 10, 1));
+    }
+
+    /**
+     * 持续提交排队 100 毫秒(客户端时钟时 10 秒)的请求, 直到被拒绝
+     */
+    private static boolean overload(RpcAdmissionController controller, boolean brokerClock) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < end) {
+            if (!controller.admit(System.currentTimeMillis() - (brokerClock ? 100 : 10000), brokerClock, 0, 1)) {
+                return true;
+            }
+            Thread.sleep(5);
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,89 @@
+package vip.toby.rpc.server;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+import vip.toby.rpc.entity.R;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcDeduplicationInterceptor 的去重测试
+ *
+ * @author toby
+ */
+class RpcDeduplicationInterceptorTest {
+
+    @Test
+    void duplicatePayload() {
+        final RpcDeduplicationInterceptor interceptor = new RpcDeduplicationInterceptor(1024, 60000);
+        final R result = R.ok();
+        assertFalse(interceptor.duplicateHandle("get", data(1)));
+        interceptor.afterHandle("get", null, null, result);
+        // 参数相同但对象不同
+        assertTrue(interceptor.duplicateHandle("get", data(1)));
+        assertNull(interceptor.duplicateResult("get", null, data(1)));
+        assertFalse(interceptor.duplicateHandle("get", data(2)));
+        assertFalse(interceptor.duplicateHandle("list", data(1)));
+    }
+
+    @Test
+    void duplicateResult() {
+        final RpcDeduplicationInterceptor interceptor = new RpcDeduplicationInterceptor(1024, 60000);
+        final R result = R.ok();
+        final JSONObject data = data(1);
+        assertFalse(interceptor.duplicateHandle("get", data));
+        interceptor.afterHandle("get", null, data, result);
+        assertTrue(interceptor.duplicateHandle("get", data(1)));
+        assertSame(result, interceptor.duplicateResult("get", null, data(1)));
+    }
+
+    @Test
+    void failedCallCanRetry() {
+        final RpcDeduplicationInterceptor interceptor = new RpcDeduplicationInterceptor(1024, 60000);
+        final JSONObject data = data(1);
+        assertFalse(interceptor.rpcDuplicateHandle("get", "id"));
+        assertFalse(interceptor.duplicateHandle("get", data));
+        interceptor.afterHandle("get", "id", data, null);
+        assertFalse(interceptor.rpcDuplicateHandle("get", "id"));
+        assertFalse(interceptor.duplicateHandle("get", data(1)));
+    }
+
+    @Test
+    void payloadDuplicateCompletesCorrelationId() {
+        final RpcDeduplicationInterceptor interceptor = new RpcDeduplicationInterceptor(1024, 60000);
+        final R result = R.ok();
+        final JSONObject data = data(1);
+        assertFalse(interceptor.rpcDuplicateHandle("get", "first"));
+        assertFalse(interceptor.duplicateHandle("get", data));
+        interceptor.afterHandle("get", "first", data, result);
+        // 不同的消息 ID, 参数相同, 按 RpcServerHandler 的顺序回调
+        assertFalse(interceptor.rpcDuplicateHandle("get", "second"));
+        assertTrue(interceptor.duplicateHandle("get", data(1)));
+        final R duplicateResult = interceptor.duplicateResult("get", "second", data(1));
+        assertSame(result, duplicateResult);
+        interceptor.afterHandle("get", "second", null, duplicateResult);
+        // 重新投递时返回同样的结果
+        assertTrue(interceptor.rpcDuplicateHandle("get", "second"));
+        assertSame(result, interceptor.duplicateResult("get", "second", null));
+    }
+
+    @Test
+    void payloadDuplicateInProgressReleasesCorrelationId() {
+        final RpcDeduplicationInterceptor interceptor = new RpcDeduplicationInterceptor(1024, 60000);
+        assertFalse(interceptor.rpcDuplicateHandle("get", "first"));
+        assertFalse(interceptor.duplicateHandle("get", data(1)));
+        // 首次调用还未完成
+        assertFalse(interceptor.rpcDuplicateHandle("get", "second"));
+        assertTrue(interceptor.duplicateHandle("get", data(1)));
+        assertNull(interceptor.duplicateResult("get", "second", data(1)));
+        interceptor.afterHandle("get", "second", null, null);
+        assertFalse(interceptor.rpcDuplicateHandle("get", "second"));
+    }
+
+    private static JSONObject data(int id) {
+        final JSONObject data = new JSONObject();
+        data.put("id", id);
+        return data;
+    }
+
+}
@@ -0,0 +1,80 @@
+package vip.toby.rpc.server;
+
+import org.junit.jupiter.api.Test;
+import vip.toby.rpc.entity.R;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcDeduplicationTable 的写入、过期和淘汰测试
+ *
+ * @author toby
+ */
+class RpcDeduplicationTableTest {
+
+    @Test
+    void putIfAbsent() {
+        final RpcDeduplicationTable table = new RpcDeduplicationTable(16, 1, 60000);
+        assertTrue(table.putIfAbsent(5));
+        assertFalse(table.putIfAbsent(5));
+        assertTrue(table.putIfAbsent(6));
+        // 0 表示空位, 与 1 共用
+        assertTrue(table.putIfAbsent(0));
+        assertFalse(table.putIfAbsent(1));
+    }
+
+    @Test
+    void completeAndGet() {
+        final RpcDeduplicationTable table = new RpcDeduplicationTable(16, 1, 60000);
+        final R result = R.ok();
+        // 不存在时不记录
+        table.complete(5, result);
+        assertNull(table.get(5));
+        assertTrue(table.putIfAbsent(5));
+        // 还在执行
+        assertNull(table.get(5));
+        table.complete(5, result);
+        assertSame(result, table.get(5));
+    }
+
+    @Test
+    void remove() {
+        final RpcDeduplicationTable table = new RpcDeduplicationTable(16, 1, 60000);
+        assertTrue(table.putIfAbsent(5));
+        table.complete(5, R.ok());
+        table.remove(5);
+        assertNull(table.get(5));
+        // 移除后允许重试
+        assertTrue(table.putIfAbsent(5));
+        assertNull(table.get(5));
+    }
+
+    @Test
+    void expiry() throws InterruptedException {
+        final RpcDeduplicationTable table = new RpcDeduplicationTable(16, 1, 50);
+        assertTrue(table.putIfAbsent(5));
+        table.complete(5, R.ok());
+        Thread.sleep(100);
+        assertNull(table.get(5));
+        assertTrue(table.putIfAbsent(5));
+        assertFalse(table.putIfAbsent(5));
+    }
+
+    @Test
+    void evictsEarliestExpiring() throws InterruptedException {
+        // 单个分段 16 个槽位, key 1 ~ 16 各占一个槽位
+        final RpcDeduplicationTable table = new RpcDeduplicationTable(16, 1, 60000);
+        for (long key = 1; key <= 16; key++) {
+            assertTrue(table.putIfAbsent(key));
+            Thread.sleep(2);
+        }
+        // 没有空位, 淘汰最早过期的 key 1
+        assertTrue(table.putIfAbsent(17));
+        assertFalse(table.putIfAbsent(17));
+        for (long key = 2; key <= 16; key++) {
+            assertFalse(table.putIfAbsent(key));
+        }
+        assertTrue(table.putIfAbsent(1));
+    }
+
+}
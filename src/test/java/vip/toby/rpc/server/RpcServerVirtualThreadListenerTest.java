@@ -0,0 +1,156 @@
+package vip.toby.rpc.server;
+
+import com.rabbitmq.client.Channel;
+import org.jspecify.annotations.NonNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import vip.toby.rpc.codec.RpcBatchingStrategy;
+import vip.toby.rpc.entity.RpcType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcServerVirtualThreadListener 的批量消息组装和并发限制测试
+ *
+ * @author toby
+ */
+class RpcServerVirtualThreadListenerTest {
+
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    private RpcServerVirtualThreadListener listener;
+
+    @AfterEach
+    void destroy() {
+        if (this.listener != null) {
+            this.listener.destroy();
+        }
+    }
+
+    @Test
+    void batchFragmentsHandledInOrder() {
+        this.listener = new RpcServerVirtualThreadListener("test", new RecordingHandler(null, null), 4);
+        onMessage(fragment("a", 1, false));
+        onMessage(fragment("b", 1, false));
+        assertTrue(this.handled.isEmpty());
+        onMessage(fragment("c", 1, true));
+        this.listener.destroy();
+        assertEquals(List.of("a", "b", "c"), this.handled);
+    }
+
+    @Test
+    void incompleteBatchDropped() {
+        this.listener = new RpcServerVirtualThreadListener("test", new RecordingHandler(null, null), 4);
+        // 第一条批量消息拆分到一半失败, 没有收到最后一条记录
+        onMessage(fragment("a", 1, false));
+        onMessage(fragment("b", 1, false));
+        onMessage(fragment("c", 2, false));
+        onMessage(fragment("d", 2, true));
+        this.listener.destroy();
+        assertEquals(List.of("c", "d"), this.handled);
+    }
+
+    @Test
+    void incompleteBatchDroppedBeforeSingleMessage() {
+        this.listener = new RpcServerVirtualThreadListener("test", new RecordingHandler(null, null), 4);
+        onMessage(fragment("a", 1, false));
+        onMessage(message("b", 2));
+        onMessage(fragment("c", 3, true));
+        this.listener.destroy();
+        // 两条消息在不同的虚拟线程中处理, 不保证顺序
+        assertEquals(2, this.handled.size());
+        assertEquals(Set.of("b", "c"), Set.copyOf(this.handled));
+    }
+
+    @Test
+    void concurrencyBounded() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        this.listener = new RpcServerVirtualThreadListener("test", new RecordingHandler(release, running, maxRunning), 2);
+        final CountDownLatch dispatched = new CountDownLatch(1);
+        final Thread consumer = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 3; i++) {
+                onMessage(message(String.valueOf(i), i + 1));
+            }
+            dispatched.countDown();
+        });
+        // 第三条消息等待空闲的许可, 阻塞消费线程
+        assertFalse(dispatched.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, running.get());
+        release.countDown();
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        consumer.join();
+        this.listener.destroy();
+        assertEquals(2, maxRunning.get());
+        assertEquals(3, this.handled.size());
+    }
+
+    private void onMessage(Message message) {
+        try {
+            this.listener.onMessage(message, null);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Message message(String body, long deliveryTag) {
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setDeliveryTag(deliveryTag);
+        return new Message(body.getBytes(), messageProperties);
+    }
+
+    private static Message fragment(String body, long deliveryTag, boolean last) {
+        final Message message = message(body, deliveryTag);
+        message.getMessageProperties().setHeader(RpcBatchingStrategy.BATCH_SIZE, 2);
+        message.getMessageProperties().setLastInBatch(last);
+        return message;
+    }
+
+    /**
+     * 只记录消息内容, release 不为 null 时阻塞到放行
+     */
+    private class RecordingHandler extends RpcServerHandler {
+
+        private final CountDownLatch release;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+
+        RecordingHandler(CountDownLatch release, AtomicInteger running) {
+            this(release, running, new AtomicInteger());
+        }
+
+        RecordingHandler(CountDownLatch release, AtomicInteger running, AtomicInteger maxRunning) {
+            super(null, "test", RpcType.ASYNC, null, null, null, null, 0, null, null, null, null, null);
+            this.release = release;
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        public void onMessage(@NonNull Message message, Channel channel) {
+            if (this.release != null) {
+                this.maxRunning.accumulateAndGet(this.running.incrementAndGet(), Math::max);
+                try {
+                    this.release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    this.running.decrementAndGet();
+                }
+            }
+            RpcServerVirtualThreadListenerTest.this.handled.add(new String(message.getBody()));
+        }
+
+    }
+
+}
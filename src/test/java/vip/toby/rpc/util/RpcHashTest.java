@@ -0,0 +1,56 @@
+package vip.toby.rpc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RpcHash 的 XXH64 测试
+ *
+ * @author toby
+ */
+class RpcHashTest {
+
+    @Test
+    void knownValues() {
+        assertEquals(0xEF46DB3751D8E999L, RpcHash.xxHash64(new byte[0], 0));
+        assertEquals(0xD24EC4F1A98C6E5BL, RpcHash.xxHash64("a".getBytes(StandardCharsets.UTF_8), 0));
+        assertEquals(0x44BC2CF5AD770999L, RpcHash.xxHash64("abc".getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    @Test
+    void streamingMatchesOneShot() {
+        final Random random = new Random(42);
+        final RpcHash.XxHash64 hash = new RpcHash.XxHash64(0);
+        for (int length = 0; length <= 200; length++) {
+            final byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            final long seed = random.nextLong();
+            final long expected = RpcHash.xxHash64(bytes, seed);
+            // 按不同的长度分段写入
+            for (int chunk = 1; chunk <= 40; chunk += 3) {
+                hash.reset(seed);
+                for (int offset = 0; offset < length; offset += chunk) {
+                    hash.update(bytes, offset, Math.min(chunk, length - offset));
+                }
+                assertEquals(expected, hash.digest(), "length: " + length + ", chunk: " + chunk);
+            }
+            hash.reset(seed);
+            for (byte b : bytes) {
+                hash.update(b);
+            }
+            assertEquals(expected, hash.digest(), "length: " + length);
+        }
+    }
+
+    @Test
+    void stringHash() {
+        assertEquals(RpcHash.hash("get"), RpcHash.hash(new StringBuilder("get")));
+        assertNotEquals(RpcHash.hash("get"), RpcHash.hash("gte"));
+        assertNotEquals(RpcHash.hash(""), RpcHash.hash("\0"));
+    }
+
+}